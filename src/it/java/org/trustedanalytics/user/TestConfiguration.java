@@ -34,12 +34,16 @@ import org.trustedanalytics.cloud.auth.AuthTokenRetriever;
 import org.trustedanalytics.cloud.cc.api.CcOperations;
 import org.trustedanalytics.cloud.uaa.UaaOperations;
 import org.trustedanalytics.user.common.BlacklistEmailValidator;
+import org.trustedanalytics.user.common.ContextPropagatingExecutor;
 import org.trustedanalytics.user.common.FormatUserRolesValidator;
 import org.trustedanalytics.user.common.UserPasswordValidator;
+import org.trustedanalytics.user.current.PermissionsCache;
 import org.trustedanalytics.user.current.UserDetailsFinder;
 import org.trustedanalytics.user.invite.*;
 import org.trustedanalytics.user.invite.access.AccessInvitations;
 import org.trustedanalytics.user.invite.access.AccessInvitationsService;
+import org.trustedanalytics.user.manageusers.AuthorizationDecisionCache;
+import org.trustedanalytics.user.manageusers.UserNamesCache;
 import org.trustedanalytics.user.manageusers.UsersService;
 
 @Configuration
@@ -56,6 +60,26 @@ public class TestConfiguration {
         return mock(UsersService.class);
     }
 
+    @Bean
+    protected UserNamesCache userNamesCache() {
+        return new UserNamesCache(100, 60);
+    }
+
+    @Bean
+    protected ContextPropagatingExecutor ccCallsExecutor() {
+        return new ContextPropagatingExecutor("cc-calls", 4);
+    }
+
+    @Bean
+    protected AuthorizationDecisionCache authorizationDecisionCache() {
+        return new AuthorizationDecisionCache(0, 0);
+    }
+
+    @Bean
+    protected PermissionsCache permissionsCache() {
+        return new PermissionsCache(0, 0);
+    }
+
     @Bean
     protected CloudFoundryOperations cloudFoundryClient() {
         return mock(CloudFoundryOperations.class);
@@ -143,6 +167,11 @@ public class TestConfiguration {
         return mock(AccessInvitations.class);
     }
 
+    @Bean
+    protected OrgNameLookup orgNameLookup() {
+        return mock(OrgNameLookup.class);
+    }
+
     @Bean
     protected InvitationLinkGenerator invitationLinkGenerator() {
         return mock(InvitationLinkGenerator.class);
@@ -0,0 +1,82 @@
+/**
+ *  Copyright (c) 2015 Intel Corporation 
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.trustedanalytics.user.common;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Validation of e-mails of a bulk import against a blocklist of the size of public disposable
+ * e-mail domain lists. Every other e-mail comes from a blocked domain.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class BlacklistEmailValidatorBenchmark {
+
+    private static final int EMAILS_COUNT = 1024;
+
+    @Param({"10", "100000", "1000000"})
+    private int blockedDomainsCount;
+
+    private BlacklistEmailValidator validator;
+    private String[] emails;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        List<String> blockedDomains = new ArrayList<>(blockedDomainsCount);
+        for (int i = 0; i < blockedDomainsCount; i++) {
+            blockedDomains.add("disposable-" + i + ".com");
+        }
+        validator = new BlacklistEmailValidator(blockedDomains, Collections.emptyList(), null, 0);
+
+        emails = new String[EMAILS_COUNT];
+        for (int i = 0; i < EMAILS_COUNT; i++) {
+            emails[i] = i % 2 == 0
+                    ? "user" + i + "@disposable-" + (i % blockedDomainsCount) + ".com"
+                    : "user" + i + "@mail.company-" + i + ".com";
+        }
+    }
+
+    @Benchmark
+    public boolean validate() {
+        String email = emails[next++ & (EMAILS_COUNT - 1)];
+        try {
+            validator.validate(email);
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ *  Copyright (c) 2015 Intel Corporation 
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.trustedanalytics.user.orgs;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.trustedanalytics.cloud.cc.api.CcOrg;
+import org.trustedanalytics.cloud.cc.api.CcSpace;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Organizations tree as built for an admin account, which sees every organization and space
+ * of the platform. Every organization has two spaces and every tenth one is managed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class FormatTranslatorBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    private int orgsCount;
+
+    private List<CcOrg> orgs;
+    private List<CcOrg> managedOrgs;
+    private List<CcSpace> spaces;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(orgsCount);
+        orgs = new ArrayList<>(orgsCount);
+        managedOrgs = new ArrayList<>(orgsCount / 10);
+        spaces = new ArrayList<>(orgsCount * 2);
+
+        for (int i = 0; i < orgsCount; i++) {
+            UUID orgGuid = new UUID(random.nextLong(), random.nextLong());
+            CcOrg org = new CcOrg(orgGuid, "org-" + i);
+            orgs.add(org);
+            if (i % 10 == 0) {
+                managedOrgs.add(org);
+            }
+            spaces.add(new CcSpace(new UUID(random.nextLong(), random.nextLong()), "space-" + i + "-a", orgGuid));
+            spaces.add(new CcSpace(new UUID(random.nextLong(), random.nextLong()), "space-" + i + "-b", orgGuid));
+        }
+    }
+
+    @Benchmark
+    public Collection<Organization> organizationsWithSpaces() {
+        return FormatTranslator.getOrganizationsWithSpaces(orgs, managedOrgs, spaces);
+    }
+}
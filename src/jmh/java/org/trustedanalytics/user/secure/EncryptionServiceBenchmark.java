@@ -0,0 +1,103 @@
+/**
+ *  Copyright (c) 2016 Intel Corporation 
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.trustedanalytics.user.secure;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashing of keys and encryption of values as done by every Redis store operation, called from
+ * several request threads at once. Teardown fails the run if any hash differs from the one
+ * computed before, so unsafe sharing of the digest shows up as an error.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@Threads(4)
+public class EncryptionServiceBenchmark {
+
+    private static final String CIPHER = "16-DigitsCipherK";
+    private static final String SALT = "Randomly_Ganareted_32-DigitsSalt";
+    private static final String KEY = "email@example.com";
+
+    private EncryptionService encryptionService;
+    private String expectedHash;
+    private volatile boolean wrongHash;
+    private byte[] value;
+    private SecureJson encrypted;
+    private SecureEnvelope sealed;
+
+    @Setup
+    public void setUp() throws EncryptionException {
+        encryptionService = new EncryptionService(CIPHER, SALT);
+        expectedHash = encryptionService.hash(KEY);
+        value = ("{\"email\":\"" + KEY + "\",\"code\":\"0123456789abcdef\"}").getBytes();
+        encrypted = encryptionService.encrypt(value);
+        sealed = encryptionService.seal(value);
+    }
+
+    @TearDown(Level.Iteration)
+    public void checkHashes() {
+        if (wrongHash) {
+            throw new IllegalStateException("Concurrent hashing returned a wrong hash");
+        }
+    }
+
+    @Benchmark
+    public String hash() {
+        String hash = encryptionService.hash(KEY);
+        if (!expectedHash.equals(hash)) {
+            wrongHash = true;
+        }
+        return hash;
+    }
+
+    @Benchmark
+    public SecureJson encrypt() throws EncryptionException {
+        return encryptionService.encrypt(value);
+    }
+
+    @Benchmark
+    public byte[] decrypt() throws EncryptionException {
+        return encryptionService.decrypt(encrypted);
+    }
+
+    @Benchmark
+    public SecureEnvelope seal() throws EncryptionException {
+        return encryptionService.seal(value);
+    }
+
+    @Benchmark
+    public byte[] open() throws EncryptionException {
+        return encryptionService.open(sealed);
+    }
+}
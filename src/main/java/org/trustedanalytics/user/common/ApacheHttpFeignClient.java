@@ -0,0 +1,86 @@
+/**
+ *  Copyright (c) 2015 Intel Corporation 
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.trustedanalytics.user.common;
+
+import feign.Client;
+import feign.Request;
+import feign.Response;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.util.EntityUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Feign client executing requests with shared Apache HttpClient instead of opening a new
+ * HttpURLConnection for every Cloud Controller call.
+ */
+public class ApacheHttpFeignClient implements Client {
+
+    private final HttpClient httpClient;
+
+    public ApacheHttpFeignClient(HttpClient httpClient) {
+        this.httpClient = httpClient;
+    }
+
+    @Override
+    public Response execute(Request request, Request.Options options) throws IOException {
+        RequestBuilder builder = RequestBuilder.create(request.method())
+                .setUri(request.url())
+                .setConfig(RequestConfig.custom()
+                        .setConnectTimeout(options.connectTimeoutMillis())
+                        .setSocketTimeout(options.readTimeoutMillis())
+                        .build());
+
+        request.headers().forEach((name, values) -> {
+            // HttpClient computes Content-Length from the entity and rejects duplicates
+            if (!HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                values.forEach(value -> builder.addHeader(name, value));
+            }
+        });
+        if (request.body() != null) {
+            builder.setEntity(new ByteArrayEntity(request.body()));
+        }
+
+        HttpResponse response = httpClient.execute(builder.build());
+        HttpEntity entity = response.getEntity();
+        // reading the whole body releases the connection back to the pool
+        byte[] body = entity == null ? null : EntityUtils.toByteArray(entity);
+
+        return Response.create(response.getStatusLine().getStatusCode(),
+                response.getStatusLine().getReasonPhrase(),
+                toHeadersMap(response.getAllHeaders()),
+                body);
+    }
+
+    private static Map<String, Collection<String>> toHeadersMap(Header[] headers) {
+        Map<String, Collection<String>> result = new LinkedHashMap<>();
+        for (Header header : headers) {
+            result.computeIfAbsent(header.getName(), name -> new ArrayList<>()).add(header.getValue());
+        }
+        return result;
+    }
+}
@@ -16,39 +16,90 @@
 
 package org.trustedanalytics.user.common;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
 import org.trustedanalytics.user.invite.WrongEmailAddressException;
 
-public class BlacklistEmailValidator implements EmailValidator {
-    private static final String EMAIL_PATTERN = "^[a-z0-9!#$%&'*+=?^_`{|}~-]+(?:\\.[a-z0-9!#$%&'*+=?^_`{|}~-]+)*@" +
-            "(?:[a-z0-9](?:[a-z0-9-]*[a-z0-9])?\\.)+[a-z0-9](?:[a-z0-9-]*[a-z0-9])?$";
+public class BlacklistEmailValidator implements EmailValidator, PublicMetrics, DisposableBean {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BlacklistEmailValidator.class);
+
+    private static final Pattern EMAIL_PATTERN = Pattern.compile(
+            "^[a-z0-9!#$%&'*+=?^_`{|}~-]+(?:\\.[a-z0-9!#$%&'*+=?^_`{|}~-]+)*@" +
+            "(?:[a-z0-9](?:[a-z0-9-]*[a-z0-9])?\\.)+[a-z0-9](?:[a-z0-9-]*[a-z0-9])?$");
 
     private static final int MAX_NUMBER_OF_CHARACTERS_IN_DOMAIN_PART = 252;
     private static final int MAX_NUMBER_OF_CHARACTERS_IN_LOCAL_PART = 64;
 
     private final List<String> forbiddenDomains;
+    private final List<String> allowedDomains;
+    private final Path forbiddenDomainsFile;
+    private final ScheduledExecutorService reloader;
+    private final AtomicLong reloads = new AtomicLong();
+
+    private volatile DomainPolicy policy;
+    private long forbiddenDomainsFileModified = -1;
 
     public BlacklistEmailValidator(List<String> forbiddenDomains) {
+        this(forbiddenDomains, Collections.emptyList(), null, 0);
+    }
+
+    /**
+     * Domains are blocked or allowed by DomainPolicy rules. When file is given, its lines are
+     * added to blocked domains and the file is read again every reloadIntervalSeconds if it was
+     * modified, so long lists (e.g. of disposable e-mail providers) can be updated without
+     * restart.
+     */
+    public BlacklistEmailValidator(List<String> forbiddenDomains, List<String> allowedDomains,
+                                   Path forbiddenDomainsFile, long reloadIntervalSeconds) {
         this.forbiddenDomains = forbiddenDomains;
+        this.allowedDomains = allowedDomains;
+        this.forbiddenDomainsFile = forbiddenDomainsFile;
+        policy = buildPolicy(Collections.emptyList());
+
+        if (forbiddenDomainsFile == null) {
+            reloader = null;
+            return;
+        }
+        reloadIfModified();
+        reloader = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("domains-reloader").build());
+        reloader.scheduleWithFixedDelay(this::reloadIfModified,
+                reloadIntervalSeconds, reloadIntervalSeconds, TimeUnit.SECONDS);
     }
 
-    private void validateDomain(String email) {
-        if(forbiddenDomains.contains(getDomainPart(email))){
+    private void validateDomain(String domain) {
+        if(policy.isBlocked(domain)){
             throw new WrongEmailAddressException("That domain is blocked");
         }
-        if(getDomainPart(email).length() > MAX_NUMBER_OF_CHARACTERS_IN_DOMAIN_PART) {
+        if(domain.length() > MAX_NUMBER_OF_CHARACTERS_IN_DOMAIN_PART) {
             throw new WrongEmailAddressException("Domain part of email address is too long");
         }
     }
 
-    private void validateEmailAddress(String email) {
-        Pattern pattern = Pattern.compile(EMAIL_PATTERN);
-        if(!pattern.matcher(email).matches()) {
+    private void validateEmailAddress(String email, int at) {
+        if(!EMAIL_PATTERN.matcher(email).matches()) {
             throw new WrongEmailAddressException("That email address is not valid");
         }
-        if(getLocalPart(email).length() > MAX_NUMBER_OF_CHARACTERS_IN_LOCAL_PART) {
+        if(at > MAX_NUMBER_OF_CHARACTERS_IN_LOCAL_PART) {
             throw new WrongEmailAddressException("Local part of email address is too long");
         }
     }
@@ -59,15 +110,52 @@ public class BlacklistEmailValidator implements EmailValidator {
      */
     @Override
     public void validate(String email) {
-        validateEmailAddress(email);
-        validateDomain(email);
+        int at = email.indexOf('@');
+        validateEmailAddress(email, at);
+        validateDomain(email.substring(at + 1).toLowerCase());
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        return Arrays.asList(
+                new Metric<Integer>("email.domains.rules", policy.size()),
+                new Metric<Long>("email.domains.reloads", reloads.get()));
+    }
+
+    @Override
+    public void destroy() {
+        if (reloader != null) {
+            reloader.shutdownNow();
+        }
     }
 
-    private String getDomainPart(String email) {
-        return email.substring(email.indexOf("@") + 1).toLowerCase();
+    synchronized void reloadIfModified() {
+        try {
+            long modified = Files.getLastModifiedTime(forbiddenDomainsFile).toMillis();
+            if (modified == forbiddenDomainsFileModified) {
+                return;
+            }
+            try (BufferedReader reader = Files.newBufferedReader(forbiddenDomainsFile, StandardCharsets.UTF_8)) {
+                policy = buildPolicy(() -> reader.lines().iterator());
+            }
+            forbiddenDomainsFileModified = modified;
+            reloads.incrementAndGet();
+            LOGGER.info("Loaded {} domain rules from {}", policy.size(), forbiddenDomainsFile);
+        } catch (IOException | RuntimeException e) {
+            // current rules are kept until the file can be read
+            LOGGER.warn("Unable to load blocked domains from " + forbiddenDomainsFile, e);
+        }
     }
 
-    private String getLocalPart(String email) {
-        return email.substring(0, email.indexOf("@")).toLowerCase();
+    private DomainPolicy buildPolicy(Iterable<String> fileRules) {
+        DomainPolicy built = new DomainPolicy();
+        forbiddenDomains.forEach(built::block);
+        for (String rule : fileRules) {
+            if (!rule.startsWith("#")) {
+                built.block(rule);
+            }
+        }
+        allowedDomains.forEach(built::allow);
+        return built;
     }
-}
\ No newline at end of file
+}
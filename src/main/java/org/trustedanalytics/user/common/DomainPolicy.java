@@ -0,0 +1,105 @@
+/**
+ *  Copyright (c) 2015 Intel Corporation 
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.trustedanalytics.user.common;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Blocked and allowed e-mail domains kept in a trie of domain labels in reversed order
+ * (com -> example -> mail), so a lookup costs the number of labels of the checked domain
+ * regardless of the number of rules. Rule "example.com" matches the domain itself, rule
+ * "*.example.com" matches all its subdomains. The most specific matching rule wins, allowing
+ * rule wins over blocking one of the same domain.
+ *
+ * Rules are added while the policy is built and it is read-only afterwards.
+ */
+public class DomainPolicy {
+
+    private static final String WILDCARD = "*.";
+
+    private final Node root = new Node();
+    private int size;
+
+    public DomainPolicy block(String rule) {
+        return add(rule, Boolean.TRUE);
+    }
+
+    public DomainPolicy allow(String rule) {
+        return add(rule, Boolean.FALSE);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Expects lower case domain.
+     */
+    public boolean isBlocked(String domain) {
+        Boolean blocked = null;
+        Node node = root;
+        int end = domain.length();
+        while (end > 0) {
+            if (node.subdomainsBlocked != null) {
+                blocked = node.subdomainsBlocked;
+            }
+            int start = domain.lastIndexOf('.', end - 1);
+            node = node.children.get(domain.substring(start + 1, end));
+            if (node == null) {
+                return Boolean.TRUE.equals(blocked);
+            }
+            end = start;
+        }
+        return Boolean.TRUE.equals(node.blocked != null ? node.blocked : blocked);
+    }
+
+    private DomainPolicy add(String rule, Boolean blocked) {
+        String domain = rule.trim().toLowerCase();
+        boolean wildcard = domain.startsWith(WILDCARD);
+        if (wildcard) {
+            domain = domain.substring(WILDCARD.length());
+        }
+        if (domain.isEmpty()) {
+            return this;
+        }
+
+        Node node = root;
+        int end = domain.length();
+        while (end > 0) {
+            int start = domain.lastIndexOf('.', end - 1);
+            node = node.children.computeIfAbsent(domain.substring(start + 1, end), label -> new Node());
+            end = start;
+        }
+        if (wildcard) {
+            node.subdomainsBlocked = merge(node.subdomainsBlocked, blocked);
+        } else {
+            node.blocked = merge(node.blocked, blocked);
+        }
+        size++;
+        return this;
+    }
+
+    private static Boolean merge(Boolean current, Boolean blocked) {
+        return current == null ? blocked : current && blocked;
+    }
+
+    private static class Node {
+        private final Map<String, Node> children = new HashMap<>(4);
+        private Boolean blocked;
+        private Boolean subdomainsBlocked;
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ *  Copyright (c) 2015 Intel Corporation 
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.trustedanalytics.user.common;
+
+import com.google.common.cache.Cache;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Keeps per user caches from storing entries loaded while entries of the user were being
+ * dropped. Such a load may have read data from before the change, so its result must not
+ * stay in the cache.
+ * <p>
+ * Generation of the user is bumped before the entries are dropped; a load puts its result
+ * first and checks the generation afterwards, so either the drop removes the result or the
+ * load sees the bump and removes it itself. Users are striped, a collision costs one more
+ * load at most.
+ */
+public class GenerationGuard {
+
+    // power of two, so a stripe is picked by masking the hash
+    private static final int STRIPES = 64;
+
+    private final AtomicLongArray generations = new AtomicLongArray(STRIPES);
+
+    public <K, V> V getIfPresentOrLoad(Cache<K, V> cache, K key, UUID userId, Supplier<V> loader) {
+        V value = cache.getIfPresent(key);
+        if (value == null) {
+            long generation = generations.get(stripe(userId));
+            value = loader.get();
+            cache.put(key, value);
+            if (generations.get(stripe(userId)) != generation) {
+                cache.invalidate(key);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Filter is expected to match entries of the given user only.
+     */
+    public <K> void invalidate(Cache<K, ?> cache, UUID userId, Predicate<K> filter) {
+        generations.incrementAndGet(stripe(userId));
+        cache.asMap().keySet().removeIf(filter);
+    }
+
+    private static int stripe(UUID userId) {
+        return userId.hashCode() & (STRIPES - 1);
+    }
+}
@@ -18,23 +18,142 @@ package org.trustedanalytics.user.common;
 
 import feign.RequestInterceptor;
 import feign.RequestTemplate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.http.client.ClientHttpRequestFactory;
 import org.springframework.security.oauth2.client.OAuth2RestTemplate;
 import org.springframework.security.oauth2.client.resource.OAuth2ProtectedResourceDetails;
+import org.springframework.security.oauth2.client.token.grant.client.ClientCredentialsAccessTokenProvider;
 import org.springframework.security.oauth2.common.OAuth2AccessToken;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
-public class OAuth2PriviligedInterceptor implements RequestInterceptor{
+
+/**
+ * Adds client credentials token to every request of privileged CC client. Token is fetched
+ * once and shared until it is about to expire, so UAA is asked for a new one once per token
+ * lifetime instead of once per call.
+ */
+public class OAuth2PriviligedInterceptor implements RequestInterceptor, PublicMetrics {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OAuth2PriviligedInterceptor.class);
+
+    private static final long DEFAULT_REFRESH_SKEW_SECONDS = 30;
 
     private final OAuth2ProtectedResourceDetails clientCredentials;
+    private final ClientHttpRequestFactory requestFactory;
+    private final long refreshSkewMillis;
+
+    private final Lock refreshLock = new ReentrantLock();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+
+    private volatile OAuth2AccessToken accessToken;
 
     public OAuth2PriviligedInterceptor(OAuth2ProtectedResourceDetails clientCredentials) {
+        this(clientCredentials, null, DEFAULT_REFRESH_SKEW_SECONDS);
+    }
+
+    /**
+     * @param requestFactory factory used to fetch tokens from UAA, e.g. one backed by the shared
+     *                       connection pool; default one is used when null
+     */
+    public OAuth2PriviligedInterceptor(OAuth2ProtectedResourceDetails clientCredentials,
+                                       ClientHttpRequestFactory requestFactory) {
+        this(clientCredentials, requestFactory, DEFAULT_REFRESH_SKEW_SECONDS);
+    }
+
+    public OAuth2PriviligedInterceptor(OAuth2ProtectedResourceDetails clientCredentials,
+                                       ClientHttpRequestFactory requestFactory, long refreshSkewSeconds) {
         this.clientCredentials = clientCredentials;
+        this.requestFactory = requestFactory;
+        this.refreshSkewMillis = TimeUnit.SECONDS.toMillis(refreshSkewSeconds);
     }
 
     @Override
     public void apply(RequestTemplate requestTemplate) {
-        OAuth2RestTemplate rt = new OAuth2RestTemplate(clientCredentials);
-        OAuth2AccessToken accessToken = rt.getAccessToken();
-        requestTemplate.header("Authorization", "bearer "+accessToken.getValue());
+        requestTemplate.header("Authorization", "bearer " + getAccessToken().getValue());
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        return Arrays.asList(
+                new Metric<Long>("oauth2.privileged.token.hits", hits.get()),
+                new Metric<Long>("oauth2.privileged.token.refreshes", refreshes.get()));
+    }
+
+    OAuth2AccessToken getAccessToken() {
+        OAuth2AccessToken current = accessToken;
+        if (current != null && !isAboutToExpire(current)) {
+            hits.incrementAndGet();
+            return current;
+        }
+
+        if (current != null && !current.isExpired()) {
+            // current token is still valid, so only one thread refreshes it and the others keep using it
+            if (!refreshLock.tryLock()) {
+                hits.incrementAndGet();
+                return current;
+            }
+            try {
+                return refreshIfNeeded();
+            } catch (RuntimeException e) {
+                LOGGER.warn("Unable to refresh privileged access token, using the current one", e);
+                return current;
+            } finally {
+                refreshLock.unlock();
+            }
+        }
+
+        refreshLock.lock();
+        try {
+            return refreshIfNeeded();
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    long getHits() {
+        return hits.get();
+    }
+
+    long getRefreshes() {
+        return refreshes.get();
+    }
+
+    protected OAuth2AccessToken fetchAccessToken() {
+        OAuth2RestTemplate template = new OAuth2RestTemplate(clientCredentials);
+        if (requestFactory != null) {
+            ClientCredentialsAccessTokenProvider provider = new ClientCredentialsAccessTokenProvider();
+            provider.setRequestFactory(requestFactory);
+            template.setAccessTokenProvider(provider);
+        }
+        return template.getAccessToken();
+    }
+
+    private OAuth2AccessToken refreshIfNeeded() {
+        OAuth2AccessToken current = accessToken;
+        if (current != null && !isAboutToExpire(current)) {
+            hits.incrementAndGet();
+            return current;
+        }
+
+        OAuth2AccessToken fresh = fetchAccessToken();
+        refreshes.incrementAndGet();
+        accessToken = fresh;
+        return fresh;
+    }
+
+    private boolean isAboutToExpire(OAuth2AccessToken token) {
+        Date expiration = token.getExpiration();
+        return expiration != null && expiration.getTime() - refreshSkewMillis <= System.currentTimeMillis();
     }
 }
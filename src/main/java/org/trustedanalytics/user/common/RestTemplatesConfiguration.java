@@ -39,6 +39,7 @@ import org.springframework.security.oauth2.client.token.grant.client.ClientCrede
 import org.springframework.security.oauth2.client.token.grant.client.ClientCredentialsResourceDetails;
 import org.springframework.web.client.RestTemplate;
 
+import java.nio.file.Paths;
 import java.util.List;
 
 @Profile("cloud")
@@ -48,6 +49,29 @@ public class RestTemplatesConfiguration {
     @Value("#{'${smtp.forbidden_domains}'.split(',')}")
     private List<String> forbiddenDomains;
 
+    @Value("#{'${smtp.allowed_domains}'.split(',')}")
+    private List<String> allowedDomains;
+
+    @Value("${smtp.forbidden_domains_file}")
+    private String forbiddenDomainsFile;
+
+    @Value("${smtp.forbidden_domains_reload_interval}")
+    private long forbiddenDomainsReloadInterval;
+
+    @Value("${http.pool.max_total}")
+    private int poolMaxTotal;
+
+    @Value("${http.pool.max_per_route}")
+    private int poolMaxPerRoute;
+
+    @Value("${http.pool.idle_timeout}")
+    private int poolIdleTimeout;
+
+    @Bean
+    public HttpConnectionPool httpConnectionPool() {
+        return new HttpConnectionPool(poolMaxTotal, poolMaxPerRoute, poolIdleTimeout);
+    }
+
     @Bean
     public OAuth2ClientContext oauth2ClientContext() {
         return new DefaultOAuth2ClientContext(new DefaultAccessTokenRequest());
@@ -55,8 +79,9 @@ public class RestTemplatesConfiguration {
 
     @Bean
     @Scope(value = SCOPE_REQUEST, proxyMode = TARGET_CLASS)
-    protected RestTemplate userRestTemplate() {
-        HttpComponentsClientHttpRequestFactory factory = new HttpComponentsClientHttpRequestFactory();
+    protected RestTemplate userRestTemplate(HttpConnectionPool httpConnectionPool) {
+        HttpComponentsClientHttpRequestFactory factory =
+                new HttpComponentsClientHttpRequestFactory(httpConnectionPool.getHttpClient());
         return new RestTemplate(factory);
     }
 
@@ -67,9 +92,15 @@ public class RestTemplatesConfiguration {
     }
 
     @Bean
-    public OAuth2RestTemplate clientRestTemplate(OAuth2ClientContext oauth2ClientContext, OAuth2ProtectedResourceDetails clientCredentials) {
+    public OAuth2RestTemplate clientRestTemplate(OAuth2ClientContext oauth2ClientContext,
+                                                 OAuth2ProtectedResourceDetails clientCredentials,
+                                                 HttpConnectionPool httpConnectionPool) {
+        HttpComponentsClientHttpRequestFactory factory =
+                new HttpComponentsClientHttpRequestFactory(httpConnectionPool.getHttpClient());
         OAuth2RestTemplate template = new OAuth2RestTemplate(clientCredentials, oauth2ClientContext);
+        template.setRequestFactory(factory);
         ClientCredentialsAccessTokenProvider provider = new ClientCredentialsAccessTokenProvider();
+        provider.setRequestFactory(factory);
         template.setAccessTokenProvider(provider);
         return template;
     }
@@ -91,6 +122,7 @@ public class RestTemplatesConfiguration {
 
     @Bean
     protected BlacklistEmailValidator emailValidator(){
-        return new BlacklistEmailValidator(forbiddenDomains);
+        return new BlacklistEmailValidator(forbiddenDomains, allowedDomains,
+                forbiddenDomainsFile.isEmpty() ? null : Paths.get(forbiddenDomainsFile), forbiddenDomainsReloadInterval);
     }
 }
@@ -22,23 +22,33 @@ import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
 import org.trustedanalytics.cloud.cc.api.CcOperationsOrgsSpaces;
+import org.trustedanalytics.cloud.cc.api.CcOrg;
 import org.trustedanalytics.cloud.cc.api.CcOrgPermission;
+import org.trustedanalytics.cloud.cc.api.customizations.FeignResponseException;
 
 import com.google.common.base.Strings;
 
+import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.client.HttpStatusCodeException;
+import rx.Observable;
+import rx.Scheduler;
+import rx.schedulers.Schedulers;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.Executor;
 
 @RestController
 public class AuthorizationController {
@@ -47,12 +57,16 @@ public class AuthorizationController {
 
     private final CcOperationsOrgsSpaces ccClient;
     private final UserDetailsFinder detailsFinder;
+    private final Scheduler ccCallsScheduler;
+    private final PermissionsCache permissionsCache;
 
     @Autowired
     public AuthorizationController(CcOperationsOrgsSpaces ccClient,
-        UserDetailsFinder detailsFinder) {
+        UserDetailsFinder detailsFinder, Executor ccCallsExecutor, PermissionsCache permissionsCache) {
         this.detailsFinder = detailsFinder;
         this.ccClient = ccClient;
+        this.ccCallsScheduler = Schedulers.from(ccCallsExecutor);
+        this.permissionsCache = permissionsCache;
     }
 
     @ApiOperation(
@@ -96,20 +110,54 @@ public class AuthorizationController {
 
     /**
      * Returns permissions for specified organizations for administrator user. By default
-     * administrators have access to every organization.
+     * administrators have access to every organization. When organizations are specified, only
+     * those are fetched (in parallel) instead of listing all of them.
      *
      * @param orgs organizations
      * @return permissions
      */
     private Collection<CcOrgPermission> resolveAdminPermissions(Collection<UUID> orgs) {
-        return ccClient.getOrgs()
-            // filter organizations if at least one was specified, otherwise accept all
-            .filter(org -> orgs.contains(org.getGuid()) || orgs.isEmpty())
+        Observable<CcOrg> organizations = orgs.isEmpty() ?
+            ccClient.getOrgs() :
+            findOrgs(orgs);
+
+        return organizations
             // grant full access
             .map(org -> new CcOrgPermission(org, true, true, true))
             .toList().toBlocking().single();
     }
 
+    /**
+     * Fetches organizations in parallel, each of them once. They are returned in order in
+     * which they were requested, not in order of responses.
+     */
+    private Observable<CcOrg> findOrgs(Collection<UUID> orgs) {
+        List<UUID> requested = new ArrayList<>(new LinkedHashSet<>(orgs));
+        return Observable.range(0, requested.size())
+            .flatMap(i -> findOrg(requested.get(i)).map(org -> Pair.of(i, org)))
+            .toSortedList((a, b) -> a.getLeft().compareTo(b.getLeft()))
+            .flatMapIterable(found -> found)
+            .map(Pair::getRight);
+    }
+
+    /**
+     * Fetches single organization, skipping it when it does not exist (same as filtering
+     * full list of organizations would do).
+     */
+    private Observable<CcOrg> findOrg(UUID guid) {
+        return ccClient.getOrg(guid)
+            .onErrorResumeNext(e -> isNotFound(e) ? Observable.<CcOrg>empty() : Observable.<CcOrg>error(e))
+            .subscribeOn(ccCallsScheduler);
+    }
+
+    private static boolean isNotFound(Throwable e) {
+        if (e instanceof FeignResponseException) {
+            return ((FeignResponseException) e).getStatusCode() == HttpStatus.NOT_FOUND;
+        }
+        return e instanceof HttpStatusCodeException
+            && ((HttpStatusCodeException) e).getStatusCode() == HttpStatus.NOT_FOUND;
+    }
+
     /**
      * Return permissions for specified organizations for regular user.
      *
@@ -118,7 +166,7 @@ public class AuthorizationController {
      * @return permissions
      */
     private Collection<CcOrgPermission> resolveUserPermissions(UUID user, Collection<UUID> orgs) {
-        return ccClient.getUserPermissions(user, orgs);
+        return permissionsCache.getPermissions(user, orgs, () -> ccClient.getUserPermissions(user, orgs));
     }
 
 }
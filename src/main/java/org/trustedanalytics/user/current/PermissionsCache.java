@@ -0,0 +1,90 @@
+/**
+ *  Copyright (c) 2015 Intel Corporation 
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.trustedanalytics.user.current;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableSet;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.trustedanalytics.cloud.cc.api.CcOrgPermission;
+import org.trustedanalytics.user.common.GenerationGuard;
+import org.trustedanalytics.user.manageusers.RoleChangeListener;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Short-lived per user cache of org permissions. Console asks for them on nearly every
+ * navigation, so they are resolved in Cloud Controller once per TTL. Entries of a user are
+ * dropped as soon as the user's org roles are changed or the user is deleted.
+ */
+public class PermissionsCache implements RoleChangeListener, PublicMetrics {
+
+    private final Cache<Pair<UUID, Set<UUID>>, Collection<CcOrgPermission>> permissions;
+
+    // permissions loaded while roles of the user were being changed are not kept
+    private final GenerationGuard generationGuard = new GenerationGuard();
+
+    public PermissionsCache(long maxSize, long ttlSeconds) {
+        this.permissions = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+    }
+
+    public Collection<CcOrgPermission> getPermissions(UUID userGuid, Collection<UUID> orgs,
+                                                      Supplier<Collection<CcOrgPermission>> loader) {
+        Pair<UUID, Set<UUID>> key = Pair.of(userGuid, ImmutableSet.copyOf(orgs));
+        return generationGuard.getIfPresentOrLoad(permissions, key, userGuid, loader);
+    }
+
+    public void invalidateUser(UUID userGuid) {
+        generationGuard.invalidate(permissions, userGuid, key -> key.getLeft().equals(userGuid));
+    }
+
+    @Override
+    public void orgRolesChanged(UUID userGuid, UUID orgGuid) {
+        invalidateUser(userGuid);
+    }
+
+    @Override
+    public void spaceRolesChanged(UUID userGuid, UUID spaceGuid) {
+        // org permissions do not depend on space roles
+    }
+
+    @Override
+    public void userDeleted(UUID userGuid) {
+        invalidateUser(userGuid);
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        CacheStats stats = permissions.stats();
+        return Arrays.asList(
+                new Metric<Long>("permissions.cache.hits", stats.hitCount()),
+                new Metric<Long>("permissions.cache.misses", stats.missCount()),
+                new Metric<Long>("permissions.cache.size", permissions.size()));
+    }
+}
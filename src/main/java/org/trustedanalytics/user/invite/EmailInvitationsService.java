@@ -21,6 +21,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.cloudfoundry.identity.uaa.scim.ScimUser;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.mail.MailSendException;
 import org.thymeleaf.context.Context;
 import org.thymeleaf.spring4.SpringTemplateEngine;
 import org.trustedanalytics.cloud.cc.api.CcOperations;
@@ -31,20 +32,33 @@ import org.trustedanalytics.user.common.OrgAndUserGuids;
 import org.trustedanalytics.user.common.UserExistsException;
 import org.trustedanalytics.user.invite.access.AccessInvitations;
 import org.trustedanalytics.user.invite.access.AccessInvitationsService;
+import org.trustedanalytics.user.invite.keyvaluestore.IndexPage;
+import org.trustedanalytics.user.invite.keyvaluestore.KeyValueStore;
 import org.trustedanalytics.user.invite.securitycode.SecurityCode;
 import org.trustedanalytics.user.invite.securitycode.SecurityCodeService;
+import org.trustedanalytics.user.manageusers.UserNamesCache;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 public class EmailInvitationsService implements InvitationsService {
 
     private static final Log LOGGER = LogFactory.getLog(EmailInvitationsService.class);
 
+    private static final String INVITATION_SUBJECT = "Invitation to join Trusted Analytics platform";
+
     private final SpringTemplateEngine templateEngine;
 
     @Autowired
@@ -65,6 +79,18 @@ public class EmailInvitationsService implements InvitationsService {
     @Autowired
     private InvitationLinkGenerator invitationLinkGenerator;
 
+    @Autowired
+    private UserNamesCache userNamesCache;
+
+    @Autowired
+    private OrgNameLookup orgNameLookup;
+
+    @Autowired
+    private Executor ccCallsExecutor;
+
+    @Autowired
+    private KeyValueStore<RegistrationJournal> registrationJournal;
+
     public EmailInvitationsService(SpringTemplateEngine templateEngine) {
         this.templateEngine = templateEngine;
     }
@@ -85,12 +111,45 @@ public class EmailInvitationsService implements InvitationsService {
         return sendEmail(email, currentUser, sc.get().getCode());
     }
 
+    /**
+     * Callers look the users up in bulk, so emails are not checked against UAA again. All the
+     * messages are handed over to the message service together, which paces sending them.
+     */
+    @Override
+    public Map<String, Exception> sendInviteEmails(List<String> emails, String currentUser) {
+        Map<String, Exception> failures = new LinkedHashMap<>();
+        Map<EmailMessage, String> recipients = new LinkedHashMap<>();
+        for (String email : emails) {
+            try {
+                SecurityCode sc = securityCodeService.generateCode(email);
+                String htmlContent = getEmailHtml(email, currentUser, invitationLinkGenerator.getLink(sc.getCode()));
+                recipients.put(new EmailMessage(email, INVITATION_SUBJECT, htmlContent), email);
+            } catch (RuntimeException e) {
+                failures.put(email, e);
+            }
+        }
+        if (recipients.isEmpty()) {
+            return failures;
+        }
+
+        try {
+            messageService.sendMimeMessages(new ArrayList<>(recipients.keySet()));
+            LOGGER.info("Sent " + recipients.size() + " invitations");
+        } catch (MailSendException e) {
+            if (e.getFailedMessages().isEmpty()) {
+                recipients.values().forEach(email -> failures.put(email, e));
+            } else {
+                e.getFailedMessages().forEach((message, cause) -> failures.put(recipients.get(message), cause));
+            }
+        }
+        return failures;
+    }
+
     private String sendEmail(String email, String currentUser, String code) {
         validateUsername(email);
-        String subject = "Invitation to join Trusted Analytics platform";
         String invitationLink = invitationLinkGenerator.getLink(code);
         String htmlContent = getEmailHtml(email, currentUser, invitationLink);
-        messageService.sendMimeMessage(email, subject, htmlContent);
+        messageService.sendMimeMessage(email, INVITATION_SUBJECT, htmlContent);
         LOGGER.info("Sent invitation to user " + email);
         return invitationLink;
     }
@@ -105,21 +164,49 @@ public class EmailInvitationsService implements InvitationsService {
     }
 
     @Override
-    public Optional<OrgAndUserGuids> createUser(String username, String password, String orgName) {
-        validateOrgName(orgName);
-        validateUsername(username);
-        return createAndRetrieveUser(username, password)
-                .map(userGuid -> {
-                    UUID orgGuid = createOrganization(userGuid, orgName);
-                    createSpace(orgGuid, userGuid, "default");
+    public Optional<OrgAndUserGuids> createUser(SecurityCode invitation, String password, String orgName) {
+        if(StringUtils.isBlank(orgName)) {
+            throw new InvalidOrganizationNameException("Organization cannot contain only whitespace characters");
+        }
+        String username = invitation.getEmail();
+        Registration registration = resumeRegistration(invitation);
+
+        // CC and UAA are asked at the same time, signup waits for the slower one only; names
+        // taken by the interrupted attempt of this registration are not checked again
+        CompletableFuture<Void> orgNameCheck = registration.done.getOrgGuid() != null
+                ? CompletableFuture.completedFuture(null)
+                : CompletableFuture.runAsync(() -> validateOrgName(orgName), ccCallsExecutor);
+        if (registration.done.getUserGuid() == null) {
+            validateUsername(username);
+        }
+        join(orgNameCheck);
+
+        return accessInvitationsService.getAccessInvitations(username)
+                .map(invitations -> {
+                    UUID userGuid = createUaaAndCcUser(registration, username, password);
+                    // invited roles concern other orgs, so they are assigned while the new one is created
+                    CompletableFuture<Void> invitedRoles = assignAccessInvitations(registration, userGuid, invitations);
+                    UUID orgGuid = createOrganization(registration, userGuid, orgName);
+                    join(invitedRoles);
+                    registration.complete();
                     return new OrgAndUserGuids(userGuid, orgGuid);
                 });
     }
 
     @Override
-    public Optional<UUID> createUser(String username, String password) {
-        validateUsername(username);
-        return createAndRetrieveUser(username, password);
+    public Optional<UUID> createUser(SecurityCode invitation, String password) {
+        String username = invitation.getEmail();
+        Registration registration = resumeRegistration(invitation);
+        if (registration.done.getUserGuid() == null) {
+            validateUsername(username);
+        }
+        return accessInvitationsService.getAccessInvitations(username)
+                .map(invitations -> {
+                    UUID userGuid = createUaaAndCcUser(registration, username, password);
+                    join(assignAccessInvitations(registration, userGuid, invitations));
+                    registration.complete();
+                    return userGuid;
+                });
     }
 
     @Override
@@ -132,6 +219,11 @@ public class EmailInvitationsService implements InvitationsService {
         return securityCodeService.getKeys();
     }
 
+    @Override
+    public IndexPage getPendingInvitationsEmails(String prefix, String cursor, int limit, boolean descending) {
+        return securityCodeService.getEmails(prefix, cursor, limit, descending);
+    }
+
     @Override
     public void deleteInvitation(String email) {
         Optional<SecurityCode> sc = securityCodeService.findByMail(email);
@@ -143,15 +235,33 @@ public class EmailInvitationsService implements InvitationsService {
         accessInvitationsService.redeemAccessInvitations(email);
     }
 
-    private Optional<UUID> createAndRetrieveUser(String username, String password) {
-        return accessInvitationsService.getAccessInvitations(username)
-                .map(invitations -> {
-                    final ScimUser user = uaaPrivilegedClient.createUser(username, password);
-                    final UUID userGuid = UUID.fromString(user.getId());
-                    ccPrivilegedClient.createUser(userGuid);
-                    retrieveAndAssignAccessInvitations(userGuid, invitations);
-                    return userGuid;
-                });
+    /**
+     * Journal of registration is kept under the security code of the invitation, so it is found
+     * by retries of the same registration only. It is removed once the registration succeeds.
+     */
+    private Registration resumeRegistration(SecurityCode invitation) {
+        String key = invitation.getCode();
+        RegistrationJournal journal = registrationJournal.get(key);
+        if (journal != null) {
+            LOGGER.info("Resuming interrupted registration of " + invitation.getEmail());
+        }
+        return new Registration(key, journal == null ? new RegistrationJournal() : new RegistrationJournal(journal));
+    }
+
+    private UUID createUaaAndCcUser(Registration registration, String username, String password) {
+        UUID userGuid = registration.done.getUserGuid();
+        if (userGuid == null) {
+            final ScimUser user = uaaPrivilegedClient.createUser(username, password);
+            final UUID createdGuid = UUID.fromString(user.getId());
+            userNamesCache.invalidate(createdGuid);
+            registration.record(journal -> journal.setUserGuid(createdGuid));
+            userGuid = createdGuid;
+        }
+        if (!registration.done.isCcUserCreated()) {
+            ccPrivilegedClient.createUser(userGuid);
+            registration.record(journal -> journal.setCcUserCreated(true));
+        }
+        return userGuid;
     }
 
     private void validateUsername(String username) {
@@ -161,38 +271,122 @@ public class EmailInvitationsService implements InvitationsService {
     }
 
     private void validateOrgName(String orgName) {
-        if(StringUtils.isBlank(orgName)) {
-            throw new InvalidOrganizationNameException("Organization cannot contain only whitespace characters");
+        if (orgNameLookup.exists(orgName)) {
+            throw new OrgExistsException(String.format("Organization \"%s\" already exists.", orgName));
         }
-
-        ccPrivilegedClient.getOrgs()
-            .exists(org -> org.getName().equals(orgName))
-            .doOnNext(orgExists -> {
-                if (orgExists) {
-                    throw new OrgExistsException(String.format("Organization \"%s\" already exists.", orgName));
-                }
-            })
-            .toBlocking()
-            .single();
     }
 
-    private UUID createOrganization(UUID userGuid, String orgName) {
-        final UUID orgGuid = ccPrivilegedClient.createOrganization(orgName);
-        ccPrivilegedClient.assignUserToOrganization(userGuid, orgGuid);
+    private UUID createOrganization(Registration registration, UUID userGuid, String orgName) {
+        UUID orgGuid = registration.done.getOrgGuid();
+        if (orgGuid == null) {
+            final UUID createdGuid = ccPrivilegedClient.createOrganization(orgName);
+            registration.record(journal -> journal.setOrgGuid(createdGuid));
+            orgGuid = createdGuid;
+        }
+
+        // membership and default space depend on the organization only, space role on both of them
+        final UUID newOrgGuid = orgGuid;
+        CompletableFuture<Void> membership = registration.done.isOrgMembershipAssigned()
+                ? CompletableFuture.completedFuture(null)
+                : CompletableFuture.runAsync(() -> {
+                    ccPrivilegedClient.assignUserToOrganization(userGuid, newOrgGuid);
+                    registration.record(journal -> journal.setOrgMembershipAssigned(true));
+                }, ccCallsExecutor);
+        UUID spaceGuid = registration.done.getSpaceGuid();
+        if (spaceGuid == null) {
+            final UUID createdGuid = ccPrivilegedClient.createSpace(orgGuid, "default");
+            registration.record(journal -> journal.setSpaceGuid(createdGuid));
+            spaceGuid = createdGuid;
+        }
+        join(membership);
+
+        if (!registration.done.isSpaceRoleAssigned()) {
+            ccPrivilegedClient.assignUserToSpace(userGuid, spaceGuid);
+            registration.record(journal -> journal.setSpaceRoleAssigned(true));
+        }
         return orgGuid;
     }
 
-    private UUID createSpace(UUID orgGuid, UUID userGuid, String spaceName) {
-        final UUID spaceGuid = ccPrivilegedClient.createSpace(orgGuid, spaceName);
-        ccPrivilegedClient.assignUserToSpace(userGuid, spaceGuid);
-        return spaceGuid;
+    /**
+     * Assigns all invited org roles concurrently and then all space roles, as space roles need
+     * user to be a member of the org. Every assignment is attempted, the returned future fails
+     * with RoleAssignmentException listing the failed ones. Concurrency is bounded by the CC
+     * calls executor. Roles assigned in an interrupted attempt are skipped, the ones assigned
+     * now are journaled after each phase.
+     */
+    private CompletableFuture<Void> assignAccessInvitations(Registration registration, UUID userGuid,
+                                                            AccessInvitations invitations) {
+        Map<String, Throwable> failures = new ConcurrentHashMap<>();
+        return allOf(registration, getFlatOrgRoleMap(invitations.getOrgAccessInvitations()), failures, "org",
+                        (guid, role) -> ccPrivilegedClient.assignOrgRole(userGuid, guid, role))
+                .thenCompose(orgRoles -> allOf(registration, getFlatOrgRoleMap(invitations.getSpaceAccessInvitations()),
+                        failures, "space", (guid, role) -> ccPrivilegedClient.assignSpaceRole(userGuid, guid, role)))
+                .thenRun(() -> {
+                    if (!failures.isEmpty()) {
+                        throw new RoleAssignmentException(failures);
+                    }
+                });
+    }
+
+    private CompletableFuture<Void> allOf(Registration registration, List<Pair<UUID, Role>> assignments,
+                                          Map<String, Throwable> failures, String target,
+                                          BiConsumer<UUID, Role> assignment) {
+        Set<String> assigned = ConcurrentHashMap.newKeySet();
+        return CompletableFuture.allOf(assignments.stream()
+                .filter(pair -> !registration.done.getAssignedRoles().contains(describe(target, pair)))
+                .map(pair -> CompletableFuture
+                        .runAsync(() -> assignment.accept(pair.getKey(), pair.getValue()), ccCallsExecutor)
+                        .thenRun(() -> assigned.add(describe(target, pair)))
+                        .exceptionally(e -> {
+                            String description = describe(target, pair);
+                            LOGGER.warn("Unable to assign " + description, e);
+                            failures.put(description, e instanceof CompletionException ? e.getCause() : e);
+                            return null;
+                        }))
+                .toArray(CompletableFuture[]::new))
+                .thenRun(() -> {
+                    if (!assigned.isEmpty()) {
+                        registration.record(journal -> journal.getAssignedRoles().addAll(assigned));
+                    }
+                });
     }
 
-    private void retrieveAndAssignAccessInvitations(UUID userGuid, AccessInvitations invtiations) {
-        getFlatOrgRoleMap(invtiations.getOrgAccessInvitations())
-                .forEach(pair -> ccPrivilegedClient.assignOrgRole(userGuid, pair.getKey(), pair.getValue()));
-        getFlatOrgRoleMap(invtiations.getSpaceAccessInvitations())
-                .forEach(pair -> ccPrivilegedClient.assignSpaceRole(userGuid, pair.getKey(), pair.getValue()));
+    private static String describe(String target, Pair<UUID, Role> assignment) {
+        return assignment.getValue() + " in " + target + " " + assignment.getKey();
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private class Registration {
+        private final String key;
+        // steps completed before this attempt
+        private final RegistrationJournal done;
+
+        Registration(String key, RegistrationJournal done) {
+            this.key = key;
+            this.done = done;
+        }
+
+        void record(Consumer<RegistrationJournal> step) {
+            registrationJournal.compute(key, current -> {
+                RegistrationJournal journal = current == null ? new RegistrationJournal() : current;
+                step.accept(journal);
+                return journal;
+            });
+        }
+
+        void complete() {
+            registrationJournal.remove(key);
+        }
     }
 
     private List<Pair<UUID, Role>> getFlatOrgRoleMap(Map<UUID, Set<Role>> orgRoleMap) {
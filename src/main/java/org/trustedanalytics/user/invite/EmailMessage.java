@@ -0,0 +1,48 @@
+/**
+ *  Copyright (c) 2015 Intel Corporation 
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.trustedanalytics.user.invite;
+
+public class EmailMessage {
+
+    private final String email;
+
+    private final String subject;
+
+    private final String htmlContent;
+
+    public EmailMessage(String email, String subject, String htmlContent) {
+        this.email = email;
+        this.subject = subject;
+        this.htmlContent = htmlContent;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public String getHtmlContent() {
+        return htmlContent;
+    }
+
+    @Override
+    public String toString() {
+        return "EmailMessage [email=" + email + ", subject=" + subject + "]";
+    }
+}
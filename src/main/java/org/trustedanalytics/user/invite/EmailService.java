@@ -16,6 +16,9 @@
 package org.trustedanalytics.user.invite;
 
 import java.io.UnsupportedEncodingException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import javax.mail.Address;
 import javax.mail.Message;
@@ -24,6 +27,7 @@ import javax.mail.internet.MimeMessage;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.springframework.mail.MailSendException;
 import org.springframework.mail.javamail.JavaMailSender;
 
 public class EmailService implements MessageService {
@@ -55,6 +59,27 @@ public class EmailService implements MessageService {
 
     @Override
     public void sendMimeMessage(String email, String subject, String htmlContent) {
+        mailSender.send(createMimeMessage(email, subject, htmlContent));
+    }
+
+    @Override
+    public void sendMimeMessages(List<EmailMessage> messages) {
+        Map<MimeMessage, EmailMessage> originals = new LinkedHashMap<>();
+        messages.forEach(message -> originals.put(
+            createMimeMessage(message.getEmail(), message.getSubject(), message.getHtmlContent()), message));
+
+        try {
+            mailSender.send(originals.keySet().toArray(new MimeMessage[originals.size()]));
+        } catch (MailSendException e) {
+            // report failures in terms of messages passed in
+            Map<Object, Exception> failedMessages = new LinkedHashMap<>();
+            e.getFailedMessages().forEach((message, cause) ->
+                failedMessages.put(originals.containsKey(message) ? originals.get(message) : message, cause));
+            throw failedMessages.isEmpty() ? e : new MailSendException(failedMessages);
+        }
+    }
+
+    private MimeMessage createMimeMessage(String email, String subject, String htmlContent) {
         MimeMessage message = mailSender.createMimeMessage();
         try {
             message.addFrom(senderAddresses);
@@ -64,6 +89,6 @@ public class EmailService implements MessageService {
         } catch (Exception e) {
             LOGGER.error(e);
         }
-        mailSender.send(message);
+        return message;
     }
 }
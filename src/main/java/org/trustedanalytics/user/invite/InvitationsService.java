@@ -16,7 +16,11 @@
 package org.trustedanalytics.user.invite;
 
 import org.trustedanalytics.user.common.OrgAndUserGuids;
+import org.trustedanalytics.user.invite.keyvaluestore.IndexPage;
+import org.trustedanalytics.user.invite.securitycode.SecurityCode;
 
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
@@ -25,9 +29,16 @@ import java.util.UUID;
 public interface InvitationsService {
     String sendInviteEmail(String email, String currentUser);
     String resendInviteEmail(String email, String currentUser);
-    Optional<OrgAndUserGuids> createUser(String username, String password, String orgName);
-    Optional<UUID> createUser(String username, String password);
+
+    /**
+     * Sends invitations to all emails together. Callers check that emails do not belong to
+     * existing users. Returns emails that could not be invited.
+     */
+    Map<String, Exception> sendInviteEmails(List<String> emails, String currentUser);
+    Optional<OrgAndUserGuids> createUser(SecurityCode invitation, String password, String orgName);
+    Optional<UUID> createUser(SecurityCode invitation, String password);
     boolean userExists(String username);
     Set<String> getPendingInvitationsEmails();
+    IndexPage getPendingInvitationsEmails(String prefix, String cursor, int limit, boolean descending);
     void deleteInvitation(String email);
 }
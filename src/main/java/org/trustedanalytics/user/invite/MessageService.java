@@ -15,8 +15,32 @@
  */
 package org.trustedanalytics.user.invite;
 
+import org.springframework.mail.MailSendException;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 public interface MessageService {
 
     void sendMimeMessage(String email, String subject, String htmlContent);
+
+    /**
+     * Sends all messages, over a single connection when implementation supports it. When some
+     * of them could not be sent, throws MailSendException with failed messages (instances
+     * passed in) as keys of failed messages map.
+     */
+    default void sendMimeMessages(List<EmailMessage> messages) {
+        Map<Object, Exception> failedMessages = new LinkedHashMap<>();
+        for (EmailMessage message : messages) {
+            try {
+                sendMimeMessage(message.getEmail(), message.getSubject(), message.getHtmlContent());
+            } catch (RuntimeException e) {
+                failedMessages.put(message, e);
+            }
+        }
+        if (!failedMessages.isEmpty()) {
+            throw new MailSendException(failedMessages);
+        }
+    }
 }
@@ -0,0 +1,50 @@
+/**
+ *  Copyright (c) 2015 Intel Corporation 
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.trustedanalytics.user.invite;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.springframework.web.client.RestOperations;
+
+/**
+ * Checks whether organization name is taken by asking Cloud Controller for organizations
+ * filtered by the name, so the cost does not grow with the number of organizations.
+ */
+public class OrgNameLookup {
+
+    private static final String ORGS_BY_NAME_PATH = "/v2/organizations?q=name:{name}";
+
+    private final RestOperations restOperations;
+    private final String apiBaseUrl;
+
+    public OrgNameLookup(RestOperations restOperations, String apiBaseUrl) {
+        this.restOperations = restOperations;
+        this.apiBaseUrl = apiBaseUrl;
+    }
+
+    public boolean exists(String orgName) {
+        JsonNode page = restOperations.getForObject(apiBaseUrl + ORGS_BY_NAME_PATH, JsonNode.class, orgName);
+        if (page == null) {
+            return false;
+        }
+        // filter may be case insensitive, depending on CC database
+        for (JsonNode org : page.path("resources")) {
+            if (orgName.equals(org.path("entity").path("name").asText())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
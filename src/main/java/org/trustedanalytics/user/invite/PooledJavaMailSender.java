@@ -0,0 +1,186 @@
+/**
+ *  Copyright (c) 2015 Intel Corporation 
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.trustedanalytics.user.invite;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.mail.MailAuthenticationException;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import javax.mail.AuthenticationFailedException;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.Transport;
+import javax.mail.internet.MimeMessage;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Mail sender that keeps a few authenticated SMTP connections open and reuses them, instead
+ * of connecting (with TLS handshake and AUTH) for every send. Connection is closed after it
+ * sent configured number of messages, was idle for too long or failed.
+ */
+public class PooledJavaMailSender extends JavaMailSenderImpl implements PublicMetrics, DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PooledJavaMailSender.class);
+
+    private final BlockingQueue<PooledTransport> idleTransports;
+    private final int maxMessagesPerConnection;
+    private final long idleTimeoutMillis;
+
+    private final AtomicLong opened = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+
+    public PooledJavaMailSender(int poolSize, int maxMessagesPerConnection, long idleTimeoutMillis) {
+        this.idleTransports = new ArrayBlockingQueue<>(poolSize);
+        this.maxMessagesPerConnection = maxMessagesPerConnection;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    @Override
+    protected void doSend(MimeMessage[] mimeMessages, Object[] originalMessages) throws MailException {
+        Map<Object, Exception> failedMessages = new LinkedHashMap<>();
+        PooledTransport transport = null;
+        try {
+            for (int i = 0; i < mimeMessages.length; i++) {
+                if (transport == null) {
+                    try {
+                        transport = borrow();
+                    } catch (AuthenticationFailedException e) {
+                        throw new MailAuthenticationException(e);
+                    } catch (MessagingException e) {
+                        // none of the remaining messages can be sent without connection
+                        for (int j = i; j < mimeMessages.length; j++) {
+                            failedMessages.put(original(mimeMessages, originalMessages, j), e);
+                        }
+                        break;
+                    }
+                }
+
+                try {
+                    send(transport, mimeMessages[i]);
+                    if (transport.sent >= maxMessagesPerConnection) {
+                        close(transport);
+                        transport = null;
+                    }
+                } catch (SendFailedException e) {
+                    // rejected recipients, connection itself is fine
+                    failedMessages.put(original(mimeMessages, originalMessages, i), e);
+                } catch (MessagingException e) {
+                    failedMessages.put(original(mimeMessages, originalMessages, i), e);
+                    close(transport);
+                    transport = null;
+                }
+            }
+        } finally {
+            if (transport != null) {
+                release(transport);
+            }
+        }
+
+        if (!failedMessages.isEmpty()) {
+            throw new MailSendException(failedMessages);
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        return Arrays.asList(
+                new Metric<Long>("smtp.connections.opened", opened.get()),
+                new Metric<Long>("smtp.connections.reused", reused.get()),
+                new Metric<Integer>("smtp.connections.idle", idleTransports.size()));
+    }
+
+    @Override
+    public void destroy() {
+        PooledTransport transport;
+        while ((transport = idleTransports.poll()) != null) {
+            close(transport);
+        }
+    }
+
+    private PooledTransport borrow() throws MessagingException {
+        long now = System.currentTimeMillis();
+        PooledTransport transport;
+        while ((transport = idleTransports.poll()) != null) {
+            if (transport.lastUsed + idleTimeoutMillis > now && transport.transport.isConnected()) {
+                reused.incrementAndGet();
+                return transport;
+            }
+            close(transport);
+        }
+
+        Transport connected = getTransport(getSession());
+        connected.connect(getHost(), getPort(), getUsername(), getPassword());
+        opened.incrementAndGet();
+        return new PooledTransport(connected);
+    }
+
+    private void release(PooledTransport transport) {
+        transport.lastUsed = System.currentTimeMillis();
+        if (transport.sent >= maxMessagesPerConnection || !idleTransports.offer(transport)) {
+            close(transport);
+        }
+    }
+
+    private static void send(PooledTransport transport, MimeMessage message) throws MessagingException {
+        if (message.getSentDate() == null) {
+            message.setSentDate(new Date());
+        }
+        // saveChanges() regenerates Message-ID, so the one set by caller is restored
+        String messageId = message.getMessageID();
+        message.saveChanges();
+        if (messageId != null) {
+            message.setHeader("Message-ID", messageId);
+        }
+        transport.transport.sendMessage(message, message.getAllRecipients());
+        transport.sent++;
+    }
+
+    private static void close(PooledTransport transport) {
+        try {
+            transport.transport.close();
+        } catch (MessagingException e) {
+            LOGGER.debug("Unable to close SMTP connection", e);
+        }
+    }
+
+    private static Object original(MimeMessage[] mimeMessages, Object[] originalMessages, int index) {
+        return originalMessages != null ? originalMessages[index] : mimeMessages[index];
+    }
+
+    private static class PooledTransport {
+        private final Transport transport;
+        private int sent;
+        private long lastUsed;
+
+        PooledTransport(Transport transport) {
+            this.transport = transport;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ *  Copyright (c) 2015 Intel Corporation 
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.trustedanalytics.user.invite;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Steps of a registration completed so far, stored under the security code. A retried
+ * registration skips them instead of calling UAA and CC again.
+ */
+public class RegistrationJournal {
+
+    @Getter @Setter
+    private UUID userGuid;
+
+    @Getter @Setter
+    private boolean ccUserCreated;
+
+    // invited roles already assigned, see EmailInvitationsService#assignAccessInvitations
+    @Getter @Setter
+    private Set<String> assignedRoles = new HashSet<>();
+
+    @Getter @Setter
+    private UUID orgGuid;
+
+    @Getter @Setter
+    private boolean orgMembershipAssigned;
+
+    @Getter @Setter
+    private UUID spaceGuid;
+
+    @Getter @Setter
+    private boolean spaceRoleAssigned;
+
+    public RegistrationJournal() {
+        //Empty constructor is required by Redis Serializer to properly deserialize object
+    }
+
+    public RegistrationJournal(RegistrationJournal other) {
+        this.userGuid = other.userGuid;
+        this.ccUserCreated = other.ccUserCreated;
+        this.assignedRoles = new HashSet<>(other.assignedRoles);
+        this.orgGuid = other.orgGuid;
+        this.orgMembershipAssigned = other.orgMembershipAssigned;
+        this.spaceGuid = other.spaceGuid;
+        this.spaceRoleAssigned = other.spaceRoleAssigned;
+    }
+}
@@ -0,0 +1,38 @@
+/**
+ *  Copyright (c) 2015 Intel Corporation 
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.trustedanalytics.user.invite;
+
+import java.util.Map;
+
+/**
+ * Some of the roles from access invitations could not be assigned to a registered user. The
+ * other ones are assigned, failures are described by the role and target they concern.
+ */
+public class RoleAssignmentException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient Map<String, Throwable> failures;
+
+    public RoleAssignmentException(Map<String, Throwable> failures) {
+        super("Unable to assign roles: " + String.join(", ", failures.keySet()));
+        this.failures = failures;
+    }
+
+    public Map<String, Throwable> getFailures() {
+        return failures;
+    }
+}
@@ -19,6 +19,7 @@ import com.google.common.base.Strings;
 import org.trustedanalytics.user.invite.keyvaluestore.KeyValueStore;
 
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
 public class AccessInvitationsService {
@@ -40,20 +41,17 @@ public class AccessInvitationsService {
 
     public boolean getOrgCreationEligibility(String email) {
         validateStringArgument(email);
-        return store.hasKey(email) && store.get(email).isEligibleToCreateOrg();
+        AccessInvitations invitations = store.get(email);
+        return invitations != null && invitations.isEligibleToCreateOrg();
     }
 
     public void addEligibilityToCreateOrg(String email) {
         validateStringArgument(email);
-        AccessInvitations userInvitations;
-
-        if (store.hasKey(email)) {
-            userInvitations = store.get(email);
+        store.compute(email, current -> {
+            AccessInvitations userInvitations = current == null ? new AccessInvitations(true) : current;
             userInvitations.setEligibleToCreateOrg(true);
-        } else {
-            userInvitations = new AccessInvitations(true);
-        }
-        store.put(email, userInvitations);
+            return userInvitations;
+        });
     }
 
     public void updateAccessInvitation(String email, AccessInvitations invitations) {
@@ -68,20 +66,22 @@ public class AccessInvitationsService {
 
     public CreateOrUpdateState createOrUpdateInvitation(String email, Consumer<AccessInvitations> consumer) {
         validateStringArgument(email);
-        AccessInvitations userInvitations;
-        CreateOrUpdateState state;
+        AtomicReference<CreateOrUpdateState> state = new AtomicReference<>();
 
-        if (store.hasKey(email)) {
-            userInvitations = store.get( email);
-            state = CreateOrUpdateState.UPDATED;
-        } else {
-            userInvitations = new AccessInvitations(false);
-            state = CreateOrUpdateState.CREATED;
-        }
+        store.compute(email, current -> {
+            AccessInvitations userInvitations;
+            if (current != null) {
+                userInvitations = current;
+                state.set(CreateOrUpdateState.UPDATED);
+            } else {
+                userInvitations = new AccessInvitations(false);
+                state.set(CreateOrUpdateState.CREATED);
+            }
 
-        consumer.accept(userInvitations);
-        store.put(email, userInvitations);
-        return state;
+            consumer.accept(userInvitations);
+            return userInvitations;
+        });
+        return state.get();
     }
 
     private void validateStringArgument(String arg) {
@@ -23,6 +23,12 @@ import org.trustedanalytics.user.invite.EmailInvitationsService;
 import org.trustedanalytics.user.invite.EmailService;
 import org.trustedanalytics.user.invite.InvitationLinkGenerator;
 import org.trustedanalytics.user.invite.InvitationsService;
+import org.trustedanalytics.user.invite.MessageService;
+import org.trustedanalytics.user.invite.PooledJavaMailSender;
+import org.trustedanalytics.user.invite.keyvaluestore.KeyValueStore;
+import org.trustedanalytics.user.invite.outbox.DueIndex;
+import org.trustedanalytics.user.invite.outbox.OutboxMessageService;
+import org.trustedanalytics.user.invite.outbox.OutgoingMessage;
 
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -30,12 +36,14 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
-import org.springframework.mail.javamail.JavaMailSenderImpl;
 import org.thymeleaf.spring4.SpringTemplateEngine;
 
 import java.io.UnsupportedEncodingException;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 
 @Configuration
 @Profile({"dev", "cloud"})
@@ -44,12 +52,59 @@ public class InvitationsConfig {
     @Value("#{'${smtp.forbidden_domains}'.split(',')}")
     private List<String> forbiddenDomains;
 
+    @Value("#{'${smtp.allowed_domains}'.split(',')}")
+    private List<String> allowedDomains;
+
+    @Value("${smtp.forbidden_domains_file}")
+    private String forbiddenDomainsFile;
+
+    @Value("${smtp.forbidden_domains_reload_interval}")
+    private long forbiddenDomainsReloadInterval;
+
+    @Value("${smtp.pool.size}")
+    private int poolSize;
+
+    @Value("${smtp.pool.max_messages_per_connection}")
+    private int poolMaxMessagesPerConnection;
+
+    @Value("${smtp.pool.idle_timeout}")
+    private long poolIdleTimeout;
+
+    @Value("${smtp.outbox.threads}")
+    private int outboxThreads;
+
+    @Value("${smtp.outbox.emails_per_second}")
+    private double outboxEmailsPerSecond;
+
+    @Value("${smtp.outbox.max_attempts}")
+    private int outboxMaxAttempts;
+
+    @Value("${smtp.outbox.initial_backoff}")
+    private long outboxInitialBackoff;
+
+    @Value("${smtp.outbox.sweep_interval}")
+    private long outboxSweepInterval;
+
+    @Value("${smtp.outbox.dead_letter_ttl}")
+    private long outboxDeadLetterTtl;
+
     @Autowired
     private SmtpProperties smtpProperties;
 
     @Bean(name="emailService")
-    protected EmailService emailService() throws UnsupportedEncodingException {
-        JavaMailSenderImpl sender = new JavaMailSenderImpl();
+    protected MessageService emailService(KeyValueStore<OutgoingMessage> outboxStore, DueIndex outboxDueIndex)
+            throws UnsupportedEncodingException {
+        EmailService smtpEmailService = new EmailService(mailSender(), smtpProperties.getEmail(),
+                smtpProperties.getEmailName());
+        return new OutboxMessageService(smtpEmailService, outboxStore, outboxDueIndex, outboxThreads,
+                outboxEmailsPerSecond, outboxMaxAttempts, TimeUnit.SECONDS.toMillis(outboxInitialBackoff),
+                TimeUnit.SECONDS.toMillis(outboxSweepInterval), Duration.ofDays(outboxDeadLetterTtl));
+    }
+
+    @Bean
+    protected PooledJavaMailSender mailSender() {
+        PooledJavaMailSender sender = new PooledJavaMailSender(poolSize, poolMaxMessagesPerConnection,
+                TimeUnit.SECONDS.toMillis(poolIdleTimeout));
 
         int port = smtpProperties.getPort();
 
@@ -83,7 +138,7 @@ public class InvitationsConfig {
 
         sender.setJavaMailProperties(mailProps);
 
-        return new EmailService(sender, smtpProperties.getEmail(), smtpProperties.getEmailName());
+        return sender;
     }
 
     @Bean(name="invitationsService")
@@ -93,7 +148,8 @@ public class InvitationsConfig {
 
     @Bean
     protected BlacklistEmailValidator emailValidator(){
-        return new BlacklistEmailValidator(forbiddenDomains);
+        return new BlacklistEmailValidator(forbiddenDomains, allowedDomains,
+                forbiddenDomainsFile.isEmpty() ? null : Paths.get(forbiddenDomainsFile), forbiddenDomainsReloadInterval);
     }
 
     @Bean
@@ -22,32 +22,58 @@ import org.springframework.context.annotation.Profile;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.serializer.JacksonJsonRedisSerializer;
 import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.trustedanalytics.user.invite.RegistrationJournal;
 import org.trustedanalytics.user.invite.access.AccessInvitations;
 import org.trustedanalytics.user.invite.access.AccessInvitationsService;
+import org.trustedanalytics.user.invite.keyvaluestore.ExpiredEntriesPurger;
 import org.trustedanalytics.user.invite.keyvaluestore.InMemoryStore;
 import org.trustedanalytics.user.invite.keyvaluestore.KeyValueStore;
 import org.trustedanalytics.user.invite.keyvaluestore.RedisStore;
+import org.trustedanalytics.user.invite.outbox.DueIndex;
+import org.trustedanalytics.user.invite.outbox.InMemoryDueIndex;
+import org.trustedanalytics.user.invite.outbox.OutgoingMessage;
+import org.trustedanalytics.user.invite.outbox.RedisDueIndex;
 import org.trustedanalytics.user.invite.securitycode.SecurityCode;
 import org.trustedanalytics.user.invite.securitycode.SecurityCodeService;
 import org.trustedanalytics.user.secure.EncryptionService;
 import org.trustedanalytics.user.secure.serializer.HashedStringRedisSerializer;
-import org.trustedanalytics.user.secure.serializer.SecureJacksonJsonRedisSerializer;
+import org.trustedanalytics.user.secure.serializer.LegacyHashedStringRedisSerializer;
+import org.trustedanalytics.user.secure.serializer.SecureEnvelopeRedisSerializer;
+
+import java.time.Duration;
+import java.util.Map;
 
 public class StorageConfig {
 
     private StorageConfig() {
     }
 
+    @Configuration
+    public static class ExpiryConfig {
+
+        @Value("${invitations.purge_interval}")
+        private long purgeInterval;
+
+        @Bean
+        ExpiredEntriesPurger expiredEntriesPurger(Map<String, KeyValueStore<?>> stores) {
+            return new ExpiredEntriesPurger(stores, purgeInterval);
+        }
+    }
+
     @Profile("in-memory")
     @Configuration
     public static class InMemoryStorageConfig {
 
+        @Value("${invitations.lifetime}")
+        private long invitationLifetime;
+
         @Bean
         KeyValueStore<SecurityCode> inMemorySecurityCodeStore() {
-            return new InMemoryStore<SecurityCode>();
+            return new InMemoryStore<SecurityCode>(SecurityCode::getEmail, Duration.ofDays(invitationLifetime));
         }
 
         @Bean
@@ -59,9 +85,18 @@ public class StorageConfig {
     @Profile("in-memory")
     @Configuration
     public static class InMemoryInvitationsStorageConfig {
+
+        @Value("${invitations.lifetime}")
+        private long invitationLifetime;
+
         @Bean
         KeyValueStore<AccessInvitations> inMemoryAccessInvitationsStore() {
-            return new InMemoryStore<AccessInvitations>();
+            return new InMemoryStore<AccessInvitations>(null, Duration.ofDays(invitationLifetime));
+        }
+
+        @Bean
+        KeyValueStore<RegistrationJournal> inMemoryRegistrationJournalStore() {
+            return new InMemoryStore<RegistrationJournal>(null, Duration.ofDays(invitationLifetime));
         }
 
         @Bean
@@ -70,6 +105,20 @@ public class StorageConfig {
         }
     }
 
+    @Profile("in-memory")
+    @Configuration
+    public static class InMemoryOutboxStorageConfig {
+        @Bean
+        KeyValueStore<OutgoingMessage> inMemoryOutboxStore() {
+            return new InMemoryStore<OutgoingMessage>();
+        }
+
+        @Bean
+        DueIndex inMemoryOutboxDueIndex() {
+            return new InMemoryDueIndex();
+        }
+    }
+
 
 
     @Profile("redis")
@@ -91,15 +140,29 @@ public class StorageConfig {
         protected HashedStringRedisSerializer secureStringRedisSerializer(EncryptionService encryptionService) {
             return new HashedStringRedisSerializer(encryptionService);
         }
+
+        // earlier versions did not salt keys, entries they stored are moved when first read
+        @Bean
+        protected LegacyHashedStringRedisSerializer legacyHashedStringRedisSerializer(
+                EncryptionService encryptionService) {
+            return new LegacyHashedStringRedisSerializer(encryptionService);
+        }
     }
 
     @Profile("redis")
     @Configuration
     public static class RedisStorageConfig {
 
-        @Bean
-        KeyValueStore<SecurityCode> redisSecurityCodeStore( RedisOperations<String, SecurityCode> redisTemplate) {
-            return new RedisStore<SecurityCode>(redisTemplate, "security-codes");
+        @Value("${invitations.lifetime}")
+        private long invitationLifetime;
+
+        @Bean(initMethod = "migrate")
+        KeyValueStore<SecurityCode> redisSecurityCodeStore( RedisOperations<String, SecurityCode> redisTemplate,
+                LegacyHashedStringRedisSerializer legacyHashedStringRedisSerializer) {
+            RedisStore<SecurityCode> store = new RedisStore<SecurityCode>(redisTemplate, "security-codes",
+                    SecurityCode::getEmail, Duration.ofDays(invitationLifetime));
+            store.setLegacyKeySerializer(legacyHashedStringRedisSerializer);
+            return store;
         }
 
         @Bean
@@ -108,27 +171,52 @@ public class StorageConfig {
         }
 
         @Bean
-        SecureJacksonJsonRedisSerializer<SecurityCode> secureJacksonJsonRedisSerializer(EncryptionService encryptionService) {
-            return new SecureJacksonJsonRedisSerializer<SecurityCode>(SecurityCode.class, encryptionService);
+        SecureEnvelopeRedisSerializer<SecurityCode> secureEnvelopeRedisSerializer(EncryptionService encryptionService) {
+            return new SecureEnvelopeRedisSerializer<SecurityCode>(SecurityCode.class, encryptionService);
         }
 
         @Bean
         public RedisOperations<String, SecurityCode> redisTemplate(RedisConnectionFactory redisConnectionFactory,
                                                                    HashedStringRedisSerializer hashedStringRedisSerializer,
-                                                                   SecureJacksonJsonRedisSerializer<SecurityCode> secureJacksonJsonRedisSerializer) {
+                                                                   SecureEnvelopeRedisSerializer<SecurityCode> secureEnvelopeRedisSerializer) {
             return CommonConfiguration.redisTemplate(redisConnectionFactory,
                     hashedStringRedisSerializer,
-                    secureJacksonJsonRedisSerializer);
+                    secureEnvelopeRedisSerializer);
         }
     }
 
     @Profile("redis")
     @Configuration
     public static class RedisInvitationStorageConfig {
-        @Bean
+
+        @Value("${invitations.lifetime}")
+        private long invitationLifetime;
+
+        @Bean(initMethod = "migrate")
         public KeyValueStore<AccessInvitations> redisAccessInvitationsStore(
-                RedisOperations<String, AccessInvitations> redisAccessInvitationsTemplate) {
-            return new RedisStore<AccessInvitations>(redisAccessInvitationsTemplate, "access-invitations");
+                RedisOperations<String, AccessInvitations> redisAccessInvitationsTemplate,
+                LegacyHashedStringRedisSerializer legacyHashedStringRedisSerializer) {
+            RedisStore<AccessInvitations> store = new RedisStore<AccessInvitations>(redisAccessInvitationsTemplate,
+                    "access-invitations", null, Duration.ofDays(invitationLifetime));
+            store.setLegacyKeySerializer(legacyHashedStringRedisSerializer);
+            return store;
+        }
+
+        @Bean
+        public KeyValueStore<RegistrationJournal> redisRegistrationJournalStore(
+                RedisOperations<String, RegistrationJournal> redisRegistrationJournalTemplate) {
+            return new RedisStore<RegistrationJournal>(redisRegistrationJournalTemplate, "registration-journal", null,
+                    Duration.ofDays(invitationLifetime));
+        }
+
+        @Bean
+        public RedisOperations<String, RegistrationJournal> redisRegistrationJournalTemplate(
+                RedisConnectionFactory redisConnectionFactory,
+                HashedStringRedisSerializer hashedStringRedisSerializer,
+                EncryptionService encryptionService) {
+            return CommonConfiguration.redisTemplate(redisConnectionFactory,
+                    hashedStringRedisSerializer,
+                    new SecureEnvelopeRedisSerializer<RegistrationJournal>(RegistrationJournal.class, encryptionService));
         }
 
         @Bean
@@ -145,6 +233,31 @@ public class StorageConfig {
         }
     }
 
+    @Profile("redis")
+    @Configuration
+    public static class RedisOutboxStorageConfig {
+        @Bean
+        public KeyValueStore<OutgoingMessage> redisOutboxStore(
+                RedisOperations<String, OutgoingMessage> redisOutboxTemplate) {
+            return new RedisStore<OutgoingMessage>(redisOutboxTemplate, "email-outbox");
+        }
+
+        @Bean
+        public DueIndex redisOutboxDueIndex(RedisConnectionFactory redisConnectionFactory) {
+            return new RedisDueIndex(new StringRedisTemplate(redisConnectionFactory), "email-outbox-due");
+        }
+
+        @Bean
+        public RedisOperations<String, OutgoingMessage> redisOutboxTemplate(RedisConnectionFactory redisConnectionFactory,
+                                                                            HashedStringRedisSerializer hashedStringRedisSerializer,
+                                                                            EncryptionService encryptionService) {
+            // messages carry invitation links with security codes, so they are kept encrypted
+            return CommonConfiguration.redisTemplate(redisConnectionFactory,
+                    hashedStringRedisSerializer,
+                    new SecureEnvelopeRedisSerializer<OutgoingMessage>(OutgoingMessage.class, encryptionService));
+        }
+    }
+
     private static class CommonConfiguration {
         private CommonConfiguration() {
         }
@@ -0,0 +1,86 @@
+/**
+ *  Copyright (c) 2015 Intel Corporation 
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.trustedanalytics.user.invite.keyvaluestore;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Periodically removes expired entries from all stores. Purge counts are exposed per store,
+ * under the name of its bean.
+ */
+public class ExpiredEntriesPurger implements PublicMetrics, DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ExpiredEntriesPurger.class);
+
+    private final Map<String, KeyValueStore<?>> stores;
+    private final Map<String, AtomicLong> purged = new ConcurrentHashMap<>();
+    private final AtomicLong lastPurgeTime = new AtomicLong();
+    private final ScheduledExecutorService scheduler;
+
+    public ExpiredEntriesPurger(Map<String, KeyValueStore<?>> stores, long intervalSeconds) {
+        this.stores = stores;
+        stores.keySet().forEach(name -> purged.put(name, new AtomicLong()));
+        scheduler = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("store-purger").build());
+        scheduler.scheduleWithFixedDelay(this::purgeAll, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    void purgeAll() {
+        long start = System.currentTimeMillis();
+        stores.forEach((name, store) -> {
+            try {
+                purged.get(name).addAndGet(store.purgeExpired());
+            } catch (RuntimeException e) {
+                // keep purging other stores, this one is retried in the next round
+                LOGGER.warn("Unable to purge expired entries of " + name, e);
+            }
+        });
+        lastPurgeTime.set(System.currentTimeMillis() - start);
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        long total = 0;
+        for (Map.Entry<String, AtomicLong> entry : purged.entrySet()) {
+            metrics.add(new Metric<Long>("store." + entry.getKey() + ".purged", entry.getValue().get()));
+            total += entry.getValue().get();
+        }
+        metrics.add(new Metric<Long>("store.purged", total));
+        metrics.add(new Metric<Long>("store.purge.time.last", lastPurgeTime.get()));
+        return metrics;
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+    }
+}
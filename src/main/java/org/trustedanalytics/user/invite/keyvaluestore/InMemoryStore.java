@@ -15,40 +15,230 @@
  */
 package org.trustedanalytics.user.invite.keyvaluestore;
 
+import java.time.Duration;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
 
 public class InMemoryStore<T> implements KeyValueStore<T> {
-    private final Map<String, T> valuesMap = new HashMap<String, T>();
+    private final Map<String, T> valuesMap = new ConcurrentHashMap<String, T>();
+    private final NavigableMap<String, String> indexMap = new ConcurrentSkipListMap<String, String>();
+    private final Function<T, String> indexFunction;
+    private final Duration defaultTtl;
+
+    // deadlines of expiring entries; queue is ordered by deadline and may keep outdated
+    // deadlines of renewed entries, those are skipped when they do not match the map
+    private final Map<String, Long> expiries = new ConcurrentHashMap<String, Long>();
+    private final Queue<Expiry> expiryQueue =
+            new PriorityBlockingQueue<Expiry>(11, Comparator.comparingLong((Expiry expiry) -> expiry.deadline));
+
+    public InMemoryStore() {
+        this(null);
+    }
+
+    public InMemoryStore(Function<T, String> indexFunction) {
+        this(indexFunction, null);
+    }
+
+    public InMemoryStore(Function<T, String> indexFunction, Duration defaultTtl) {
+        this.indexFunction = indexFunction;
+        this.defaultTtl = defaultTtl;
+    }
 
     @Override
     public boolean hasKey(String key) {
-        return valuesMap.containsKey(key);
+        return get(key) != null;
     }
 
     @Override
     public T get(String key) {
-        return valuesMap.get(key);
+        T value = valuesMap.get(key);
+        return value == null || isExpired(key, System.currentTimeMillis()) ? null : value;
     }
 
     @Override
     public void remove(String key) {
-        valuesMap.remove(key);
+        valuesMap.computeIfPresent(key, (k, current) -> {
+            reindex(key, current, null);
+            expiries.remove(key);
+            return null;
+        });
     }
 
     @Override
     public void put(String key, T value) {
-        valuesMap.put(key, value);
+        put(key, value, defaultTtl);
+    }
+
+    @Override
+    public void put(String key, T value, Duration ttl) {
+        valuesMap.compute(key, (k, current) -> {
+            reindex(key, current, value);
+            expireAfter(key, ttl);
+            return value;
+        });
     }
 
     @Override
     public boolean putIfAbsent(String key, T value) {
-        return valuesMap.putIfAbsent(key, value) == null;
+        return putIfAbsent(key, value, defaultTtl);
+    }
+
+    @Override
+    public boolean putIfAbsent(String key, T value, Duration ttl) {
+        AtomicBoolean added = new AtomicBoolean();
+        long now = System.currentTimeMillis();
+        valuesMap.compute(key, (k, current) -> {
+            if (current != null && !isExpired(key, now)) {
+                return current;
+            }
+            reindex(key, current, value);
+            expireAfter(key, ttl);
+            added.set(true);
+            return value;
+        });
+        return added.get();
+    }
+
+    @Override
+    public T compute(String key, UnaryOperator<T> remappingFunction) {
+        return compute(key, remappingFunction, defaultTtl);
+    }
+
+    @Override
+    public T compute(String key, UnaryOperator<T> remappingFunction, Duration ttl) {
+        long now = System.currentTimeMillis();
+        return valuesMap.compute(key, (k, current) -> {
+            boolean expired = current != null && isExpired(key, now);
+            T updated = remappingFunction.apply(expired ? null : current);
+            reindex(key, current, updated);
+            if (updated == null || (ttl == null && expired)) {
+                expiries.remove(key);
+            } else if (ttl != null) {
+                expireAfter(key, ttl);
+            }
+            return updated;
+        });
     }
 
     @Override
     public Collection<T> values() {
-        return valuesMap.values();
+        long now = System.currentTimeMillis();
+        return valuesMap.entrySet()
+                .stream()
+                .filter(entry -> !isExpired(entry.getKey(), now))
+                .map(Map.Entry::getValue)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public boolean hasIndex() {
+        return indexFunction != null;
+    }
+
+    @Override
+    public T getByIndex(String indexKey) {
+        if (!hasIndex()) {
+            throw new UnsupportedOperationException("Store has no secondary index");
+        }
+        String key = indexMap.get(indexKey);
+        return key == null ? null : get(key);
+    }
+
+    @Override
+    public IndexPage getIndexKeys(String prefix, String cursor, int limit, boolean descending) {
+        if (!hasIndex()) {
+            throw new UnsupportedOperationException("Store has no secondary index");
+        }
+        NavigableMap<String, String> range = prefix.isEmpty()
+                ? indexMap
+                : indexMap.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+        if (descending) {
+            range = range.descendingMap();
+        }
+        if (cursor != null && cursor.startsWith(prefix)) {
+            range = range.tailMap(cursor, false);
+        }
+        // keys are kept in order, so the cursor is the last key of the page
+        List<String> keys = range.keySet().stream().limit(limit + 1L).collect(Collectors.toList());
+        if (keys.size() <= limit) {
+            return new IndexPage(keys, null);
+        }
+        List<String> page = keys.subList(0, limit);
+        return new IndexPage(page, page.get(limit - 1));
+    }
+
+    @Override
+    public int purgeExpired() {
+        long now = System.currentTimeMillis();
+        AtomicInteger purged = new AtomicInteger();
+        Expiry expiry;
+        while ((expiry = expiryQueue.poll()) != null) {
+            if (expiry.deadline > now) {
+                expiryQueue.add(expiry);
+                break;
+            }
+            Long deadline = expiry.deadline;
+            valuesMap.computeIfPresent(expiry.key, (key, current) -> {
+                if (!deadline.equals(expiries.get(key))) {
+                    return current;
+                }
+                reindex(key, current, null);
+                expiries.remove(key);
+                purged.incrementAndGet();
+                return null;
+            });
+        }
+        return purged.get();
+    }
+
+    private boolean isExpired(String key, long now) {
+        Long deadline = expiries.get(key);
+        return deadline != null && deadline <= now;
+    }
+
+    // callers hold the lock of the key in valuesMap
+    private void reindex(String key, T current, T updated) {
+        if (indexFunction == null) {
+            return;
+        }
+        if (current != null) {
+            indexMap.remove(indexFunction.apply(current), key);
+        }
+        if (updated != null) {
+            indexMap.put(indexFunction.apply(updated), key);
+        }
+    }
+
+    // callers hold the lock of the key in valuesMap
+    private void expireAfter(String key, Duration ttl) {
+        if (ttl == null) {
+            expiries.remove(key);
+            return;
+        }
+        long deadline = System.currentTimeMillis() + ttl.toMillis();
+        expiries.put(key, deadline);
+        expiryQueue.add(new Expiry(key, deadline));
+    }
+
+    private static class Expiry {
+        private final String key;
+        private final long deadline;
+
+        Expiry(String key, long deadline) {
+            this.key = key;
+            this.deadline = deadline;
+        }
     }
 }
@@ -15,8 +15,13 @@
  */
 package org.trustedanalytics.user.invite.keyvaluestore;
 
+import java.time.Duration;
 import java.util.Collection;
+import java.util.function.UnaryOperator;
 
+/**
+ * Entries past their time to live are treated as absent by all reads, before they are purged.
+ */
 public interface KeyValueStore<T> {
     boolean hasKey(String key);
 
@@ -24,9 +29,57 @@ public interface KeyValueStore<T> {
 
     void remove(String key);
 
+    /**
+     * Stores the value with default time to live of the store (if any).
+     */
     void put(String key, T value);
 
+    /**
+     * Stores the value, entry expires after ttl or never when ttl is null.
+     */
+    void put(String key, T value, Duration ttl);
+
     boolean putIfAbsent(String key, T value);
 
+    boolean putIfAbsent(String key, T value, Duration ttl);
+
     Collection<T> values();
+
+    /**
+     * Atomically replaces value stored under the key with the result of remapping function.
+     * Function gets null when there is no value and may be called more than once on conflicts,
+     * so it should only depend on its argument. Returns the stored value.
+     */
+    T compute(String key, UnaryOperator<T> remappingFunction);
+
+    /**
+     * Like compute, but entry expires after ttl counted from now. Null ttl keeps the current
+     * expiration of the entry.
+     */
+    T compute(String key, UnaryOperator<T> remappingFunction, Duration ttl);
+
+    /**
+     * Tells whether the store keeps a secondary index, which getByIndex and getIndexKeys need.
+     */
+    boolean hasIndex();
+
+    /**
+     * Looks the value up by secondary index maintained on put and remove. Only for stores
+     * which have index.
+     */
+    T getByIndex(String indexKey);
+
+    /**
+     * Returns a page of index keys starting with prefix. Listing starts with null cursor and
+     * continues with next cursor of the previous page. Keys are sorted within the page, order
+     * across pages depends on the store, and a page may hold a few more than limit keys. Only
+     * for stores which have index.
+     */
+    IndexPage getIndexKeys(String prefix, String cursor, int limit, boolean descending);
+
+    /**
+     * Removes entries which outlived their time to live and returns how many of them. Expired
+     * entries are not returned anyway, this frees the space they take.
+     */
+    int purgeExpired();
 }
@@ -15,48 +15,595 @@
  */
 package org.trustedanalytics.user.invite.keyvaluestore;
 
-import org.springframework.data.redis.core.HashOperations;
+import com.google.common.base.Throwables;
+import com.google.common.hash.Hashing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.serializer.RedisSerializer;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
 
+/**
+ * Keeps values in a Redis hash. Deadlines of expiring entries and the secondary index are kept
+ * next to it and every operation touching more than one of them is a Lua script, so they are
+ * updated atomically. Entries past their deadline are treated as absent even before they are
+ * purged.
+ */
 public class RedisStore<T> implements KeyValueStore<T> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RedisStore.class);
+
+    private static final int MAX_COMPUTE_ATTEMPTS = 10;
+
+    private static final int PURGE_BATCH_SIZE = 100;
+
+    private static final byte[] NONE = new byte[0];
+
+    private static final String SCAN_START = "0";
+
+    // KEYS: store, expiry; ARGV: field, now
+    private static final Script READ = new Script(
+            "local value = redis.call('HGET', KEYS[1], ARGV[1])\n" +
+            "if not value then\n" +
+            "  return false\n" +
+            "end\n" +
+            "local deadline = redis.call('ZSCORE', KEYS[2], ARGV[1])\n" +
+            "if deadline and tonumber(deadline) <= tonumber(ARGV[2]) then\n" +
+            "  return false\n" +
+            "end\n" +
+            "return value");
+
+    // KEYS: store, expiry, index; ARGV: index field, now
+    private static final Script READ_BY_INDEX = new Script(
+            "local field = redis.call('HGET', KEYS[3], ARGV[1])\n" +
+            "if not field then\n" +
+            "  return false\n" +
+            "end\n" +
+            "local value = redis.call('HGET', KEYS[1], field)\n" +
+            "if not value then\n" +
+            "  return false\n" +
+            "end\n" +
+            "local deadline = redis.call('ZSCORE', KEYS[2], field)\n" +
+            "if deadline and tonumber(deadline) <= tonumber(ARGV[2]) then\n" +
+            "  return false\n" +
+            "end\n" +
+            "return value");
+
+    // moves the entry stored under the legacy hash of the key, unless it expired
+    // KEYS: store, expiry; ARGV: field, legacy field, now
+    private static final Script MOVE_LEGACY = new Script(
+            "if redis.call('HEXISTS', KEYS[1], ARGV[1]) == 1 then\n" +
+            "  return false\n" +
+            "end\n" +
+            "local value = redis.call('HGET', KEYS[1], ARGV[2])\n" +
+            "if not value then\n" +
+            "  return false\n" +
+            "end\n" +
+            "local deadline = redis.call('ZSCORE', KEYS[2], ARGV[2])\n" +
+            "if deadline and tonumber(deadline) <= tonumber(ARGV[3]) then\n" +
+            "  return false\n" +
+            "end\n" +
+            "redis.call('HDEL', KEYS[1], ARGV[2])\n" +
+            "redis.call('ZREM', KEYS[2], ARGV[2])\n" +
+            "redis.call('HSET', KEYS[1], ARGV[1], value)\n" +
+            "if deadline then\n" +
+            "  redis.call('ZADD', KEYS[2], deadline, ARGV[1])\n" +
+            "end\n" +
+            "return value");
+
+    // KEYS: index; ARGV: index field, legacy field, field
+    private static final Script REINDEX_LEGACY = new Script(
+            "if redis.call('HGET', KEYS[1], ARGV[1]) == ARGV[2] then\n" +
+            "  redis.call('HSET', KEYS[1], ARGV[1], ARGV[3])\n" +
+            "end\n" +
+            "return 1");
+
+    // KEYS: store, expiry; ARGV: now
+    private static final Script READ_ALL = new Script(
+            "local values = {}\n" +
+            "local entries = redis.call('HGETALL', KEYS[1])\n" +
+            "for i = 1, #entries, 2 do\n" +
+            "  local deadline = redis.call('ZSCORE', KEYS[2], entries[i])\n" +
+            "  if not deadline or tonumber(deadline) > tonumber(ARGV[1]) then\n" +
+            "    values[#values + 1] = entries[i + 1]\n" +
+            "  end\n" +
+            "end\n" +
+            "return values");
+
+    // one HSCAN step over the index, with values of entries which did not expire; indexed
+    // fields are returned too, as index entries of overwritten values may be stale
+    // KEYS: store, expiry, index; ARGV: cursor, count, now
+    private static final Script READ_INDEX_PAGE = new Script(
+            "local scan = redis.call('HSCAN', KEYS[3], ARGV[1], 'COUNT', ARGV[2])\n" +
+            "local page = {scan[1]}\n" +
+            "local entries = scan[2]\n" +
+            "for i = 1, #entries, 2 do\n" +
+            "  local value = redis.call('HGET', KEYS[1], entries[i + 1])\n" +
+            "  local deadline = redis.call('ZSCORE', KEYS[2], entries[i + 1])\n" +
+            "  if value and (not deadline or tonumber(deadline) > tonumber(ARGV[3])) then\n" +
+            "    page[#page + 1] = entries[i]\n" +
+            "    page[#page + 1] = value\n" +
+            "  end\n" +
+            "end\n" +
+            "return page");
+
+    // KEYS: store, expiry, index; ARGV: field, value, deadline (empty for none), index field
+    private static final Script PUT = new Script(
+            "redis.call('HSET', KEYS[1], ARGV[1], ARGV[2])\n" +
+            "if ARGV[3] == '' then\n" +
+            "  redis.call('ZREM', KEYS[2], ARGV[1])\n" +
+            "else\n" +
+            "  redis.call('ZADD', KEYS[2], ARGV[3], ARGV[1])\n" +
+            "end\n" +
+            "if ARGV[4] ~= '' then\n" +
+            "  redis.call('HSET', KEYS[3], ARGV[4], ARGV[1])\n" +
+            "end\n" +
+            "return 1");
+
+    // returns 1 when stored, 0 when the entry is present and -1 when it is present but expired,
+    // such entry is left to be purged with its index entry, which only the caller can find
+    // KEYS: store, expiry, index; ARGV: field, value, deadline (empty for none), index field, now
+    private static final Script PUT_IF_ABSENT = new Script(
+            "if redis.call('HEXISTS', KEYS[1], ARGV[1]) == 1 then\n" +
+            "  local deadline = redis.call('ZSCORE', KEYS[2], ARGV[1])\n" +
+            "  if deadline and tonumber(deadline) <= tonumber(ARGV[5]) then\n" +
+            "    return -1\n" +
+            "  end\n" +
+            "  return 0\n" +
+            "end\n" +
+            "redis.call('HSET', KEYS[1], ARGV[1], ARGV[2])\n" +
+            "if ARGV[3] == '' then\n" +
+            "  redis.call('ZREM', KEYS[2], ARGV[1])\n" +
+            "else\n" +
+            "  redis.call('ZADD', KEYS[2], ARGV[3], ARGV[1])\n" +
+            "end\n" +
+            "if ARGV[4] ~= '' then\n" +
+            "  redis.call('HSET', KEYS[3], ARGV[4], ARGV[1])\n" +
+            "end\n" +
+            "return 1");
+
+    // KEYS: store, expiry, index; ARGV: field, index field
+    private static final Script REMOVE = new Script(
+            "redis.call('HDEL', KEYS[1], ARGV[1])\n" +
+            "redis.call('ZREM', KEYS[2], ARGV[1])\n" +
+            "if ARGV[2] ~= '' and redis.call('HGET', KEYS[3], ARGV[2]) == ARGV[1] then\n" +
+            "  redis.call('HDEL', KEYS[3], ARGV[2])\n" +
+            "end\n" +
+            "return 1");
+
+    // sets the field only if it still holds the value the update was computed from, so only
+    // writes to the same entry make compute retry; empty value stands for a missing entry
+    // KEYS: store, expiry, index; ARGV: field, expected value, updated value, deadline (empty
+    // to keep), current index field, updated index field, now
+    private static final Script COMPUTE = new Script(
+            "local current = redis.call('HGET', KEYS[1], ARGV[1])\n" +
+            "local deadline = redis.call('ZSCORE', KEYS[2], ARGV[1])\n" +
+            "if current and deadline and tonumber(deadline) <= tonumber(ARGV[7]) then\n" +
+            "  current = false\n" +
+            "  deadline = false\n" +
+            "end\n" +
+            "if (current or '') ~= ARGV[2] then\n" +
+            "  return 0\n" +
+            "end\n" +
+            "if ARGV[3] == '' then\n" +
+            "  redis.call('HDEL', KEYS[1], ARGV[1])\n" +
+            "  redis.call('ZREM', KEYS[2], ARGV[1])\n" +
+            "else\n" +
+            "  redis.call('HSET', KEYS[1], ARGV[1], ARGV[3])\n" +
+            "  if ARGV[4] ~= '' then\n" +
+            "    redis.call('ZADD', KEYS[2], ARGV[4], ARGV[1])\n" +
+            "  elseif not deadline then\n" +
+            "    redis.call('ZREM', KEYS[2], ARGV[1])\n" +
+            "  end\n" +
+            "end\n" +
+            "if ARGV[5] ~= '' and redis.call('HGET', KEYS[3], ARGV[5]) == ARGV[1] then\n" +
+            "  redis.call('HDEL', KEYS[3], ARGV[5])\n" +
+            "end\n" +
+            "if ARGV[6] ~= '' then\n" +
+            "  redis.call('HSET', KEYS[3], ARGV[6], ARGV[1])\n" +
+            "end\n" +
+            "return 1");
+
+    // deadline is checked again, so entries renewed after they were listed are kept
+    // KEYS: store, expiry, index; ARGV: now, then field and index field of every entry
+    private static final Script PURGE = new Script(
+            "local purged = 0\n" +
+            "for i = 2, #ARGV, 2 do\n" +
+            "  local deadline = redis.call('ZSCORE', KEYS[2], ARGV[i])\n" +
+            "  if deadline and tonumber(deadline) <= tonumber(ARGV[1]) then\n" +
+            "    redis.call('ZREM', KEYS[2], ARGV[i])\n" +
+            "    purged = purged + redis.call('HDEL', KEYS[1], ARGV[i])\n" +
+            "    if ARGV[i + 1] ~= '' and redis.call('HGET', KEYS[3], ARGV[i + 1]) == ARGV[i] then\n" +
+            "      redis.call('HDEL', KEYS[3], ARGV[i + 1])\n" +
+            "    end\n" +
+            "  end\n" +
+            "end\n" +
+            "return purged");
+
+    // KEYS: store, expiry; ARGV: deadline
+    private static final Script EXPIRE_UNTRACKED = new Script(
+            "local assigned = 0\n" +
+            "for _, field in ipairs(redis.call('HKEYS', KEYS[1])) do\n" +
+            "  if not redis.call('ZSCORE', KEYS[2], field) then\n" +
+            "    redis.call('ZADD', KEYS[2], ARGV[1], field)\n" +
+            "    assigned = assigned + 1\n" +
+            "  end\n" +
+            "end\n" +
+            "return assigned");
+
     private final String storeKey;
 
-    private final HashOperations<String, String, T> hashOps;
+    private final byte[] storeKeyBytes;
+
+    // hashed keys of expiring entries scored with their deadlines, so expired ones are found
+    // with a single ZRANGEBYSCORE
+    private final byte[] expiryKey;
+
+    private final Duration defaultTtl;
+
+    // index entries point to hashed keys of entries, so a lookup by index is a single script
+    // call and neither the key nor the value leaves the store in plain form. Index keys are
+    // listed by scanning the index and decrypting values of one page at a time.
+    private final byte[] indexStoreKey;
+
+    // sorted set of plain index keys kept by earlier versions, removed by migrate()
+    private final byte[] legacyIndexKeysKey;
+
+    private final Function<T, String> indexFunction;
+
+    private final RedisOperations<String, T> redisTemplate;
+
+    private RedisSerializer<String> legacyKeySerializer;
 
     public RedisStore(RedisOperations<String, T> redisTemplate, String key) {
-        hashOps = redisTemplate.opsForHash();
+        this(redisTemplate, key, null);
+    }
+
+    public RedisStore(RedisOperations<String, T> redisTemplate, String key, Function<T, String> indexFunction) {
+        this(redisTemplate, key, indexFunction, null);
+    }
+
+    public RedisStore(RedisOperations<String, T> redisTemplate, String key, Function<T, String> indexFunction,
+                      Duration defaultTtl) {
+        this.redisTemplate = redisTemplate;
         storeKey = key;
+        storeKeyBytes = bytes(key);
+        expiryKey = bytes(key + "-expiry");
+        this.defaultTtl = defaultTtl;
+        indexStoreKey = bytes(key + "-index");
+        legacyIndexKeysKey = bytes(key + "-index-keys");
+        this.indexFunction = indexFunction;
+    }
+
+    /**
+     * Entries stored under keys serialized this way are moved under keys serialized by the
+     * template when they are first read. Entries which are never read are purged with their
+     * deadline, see migrate().
+     */
+    public void setLegacyKeySerializer(RedisSerializer<String> legacyKeySerializer) {
+        this.legacyKeySerializer = legacyKeySerializer;
     }
 
     @Override
     public boolean hasKey(String key) {
-        return hashOps.hasKey(storeKey, key);
+        return get(key) != null;
     }
 
     @Override
     public T get(String key) {
-        return hashOps.get(storeKey, key);
+        byte[] field = rawField(key);
+        byte[] value = eval(READ, ReturnType.VALUE, 2, storeKeyBytes, expiryKey,
+                field, timestamp(System.currentTimeMillis()));
+        return deserialize(value == null ? moveLegacy(key, field) : value);
     }
 
     @Override
     public void remove(String key) {
-        hashOps.delete(storeKey, key);
+        byte[] field = rawField(key);
+        moveLegacy(key, field);
+        String indexKey = null;
+        if (hasIndex()) {
+            T removed = deserialize(redisTemplate.execute(
+                    (RedisCallback<byte[]>) connection -> connection.hGet(storeKeyBytes, field)));
+            indexKey = removed == null ? null : indexFunction.apply(removed);
+        }
+        eval(REMOVE, ReturnType.INTEGER, 3, storeKeyBytes, expiryKey, indexStoreKey, field, indexField(indexKey));
     }
 
     @Override
     public void put(String key, T invitations) {
-        hashOps.put(storeKey, key, invitations);
+        put(key, invitations, defaultTtl);
+    }
+
+    @Override
+    public void put(String key, T value, Duration ttl) {
+        store(rawField(key), value, ttl);
     }
 
     @Override
     public boolean putIfAbsent(String key, T value) {
-        return hashOps.putIfAbsent(storeKey, key, value);
+        return putIfAbsent(key, value, defaultTtl);
+    }
+
+    @Override
+    public boolean putIfAbsent(String key, T value, Duration ttl) {
+        long now = System.currentTimeMillis();
+        String indexKey = hasIndex() ? indexFunction.apply(value) : null;
+        byte[] deadline = ttl == null ? NONE : timestamp(now + ttl.toMillis());
+        Long stored = eval(PUT_IF_ABSENT, ReturnType.INTEGER, 3, storeKeyBytes, expiryKey, indexStoreKey,
+                rawField(key), serialize(value), deadline, indexField(indexKey), timestamp(now));
+        if (Long.valueOf(1).equals(stored)) {
+            return true;
+        }
+        // expired entry which is not purged yet does not count
+        return Long.valueOf(-1).equals(stored) && purgeIfExpired(key) && putIfAbsent(key, value, ttl);
+    }
+
+    @Override
+    public T compute(String key, UnaryOperator<T> remappingFunction) {
+        return compute(key, remappingFunction, defaultTtl);
+    }
+
+    @Override
+    public T compute(String key, UnaryOperator<T> remappingFunction, Duration ttl) {
+        byte[] field = rawField(key);
+        for (int i = 0; i < MAX_COMPUTE_ATTEMPTS; i++) {
+            long now = System.currentTimeMillis();
+            byte[] currentValue = eval(READ, ReturnType.VALUE, 2, storeKeyBytes, expiryKey, field, timestamp(now));
+            if (currentValue == null && i == 0) {
+                currentValue = moveLegacy(key, field);
+            }
+            T current = deserialize(currentValue);
+            T updated = remappingFunction.apply(current);
+
+            byte[] updatedValue = updated == null ? NONE : serialize(updated);
+            String currentIndexKey = current == null || !hasIndex() ? null : indexFunction.apply(current);
+            String updatedIndexKey = updated == null || !hasIndex() ? null : indexFunction.apply(updated);
+            // null ttl keeps the current deadline, removed entry loses it anyway
+            byte[] deadline = ttl == null ? NONE : timestamp(now + ttl.toMillis());
+            Long swapped = eval(COMPUTE, ReturnType.INTEGER, 3, storeKeyBytes, expiryKey, indexStoreKey,
+                    field, currentValue == null ? NONE : currentValue, updatedValue, deadline,
+                    indexField(currentIndexKey), indexField(updatedIndexKey), timestamp(now));
+            if (Long.valueOf(1).equals(swapped)) {
+                return updated;
+            }
+        }
+        throw new ConcurrentModificationException("Value of " + storeKey + " changed concurrently too many times");
     }
 
     @Override
     public Collection<T> values() {
-        return hashOps.values(storeKey);
+        List<Object> values = eval(READ_ALL, ReturnType.MULTI, 2, storeKeyBytes, expiryKey,
+                timestamp(System.currentTimeMillis()));
+        if (values == null) {
+            return Collections.emptyList();
+        }
+        List<T> result = new ArrayList<>(values.size());
+        values.forEach(value -> result.add(deserialize((byte[]) value)));
+        return result;
+    }
+
+    @Override
+    public boolean hasIndex() {
+        return indexFunction != null;
+    }
+
+    @Override
+    public T getByIndex(String indexKey) {
+        if (!hasIndex()) {
+            throw new UnsupportedOperationException("Store has no secondary index");
+        }
+        T value = deserialize(eval(READ_BY_INDEX, ReturnType.VALUE, 3, storeKeyBytes, expiryKey, indexStoreKey,
+                rawField(indexKey), timestamp(System.currentTimeMillis())));
+        // entry could be overwritten with value of other index key after it was indexed
+        return value != null && indexKey.equals(indexFunction.apply(value)) ? value : null;
+    }
+
+    @Override
+    public IndexPage getIndexKeys(String prefix, String cursor, int limit, boolean descending) {
+        if (!hasIndex()) {
+            throw new UnsupportedOperationException("Store has no secondary index");
+        }
+        // cursor of HSCAN, which starts and ends with 0; a scan step may return more fields
+        // than asked for, they are all kept, as the next step starts after them
+        String scanCursor = cursor == null ? SCAN_START : cursor;
+        List<String> indexKeys = new ArrayList<>();
+        do {
+            List<Object> page = eval(READ_INDEX_PAGE, ReturnType.MULTI, 3, storeKeyBytes, expiryKey, indexStoreKey,
+                    bytes(scanCursor), bytes(Integer.toString(limit - indexKeys.size())),
+                    timestamp(System.currentTimeMillis()));
+            if (page == null || page.isEmpty()) {
+                break;
+            }
+            scanCursor = new String((byte[]) page.get(0), StandardCharsets.UTF_8);
+            for (int i = 1; i + 1 < page.size(); i += 2) {
+                String indexKey = indexFunction.apply(deserialize((byte[]) page.get(i + 1)));
+                // entry could be overwritten with value of other index key after it was indexed
+                if (indexKey.startsWith(prefix) && Arrays.equals(rawField(indexKey), (byte[]) page.get(i))) {
+                    indexKeys.add(indexKey);
+                }
+            }
+        } while (indexKeys.size() < limit && !SCAN_START.equals(scanCursor));
+
+        indexKeys.sort(descending ? Comparator.reverseOrder() : Comparator.naturalOrder());
+        return new IndexPage(indexKeys, SCAN_START.equals(scanCursor) ? null : scanCursor);
+    }
+
+    /**
+     * Brings entries stored before expiration and index were introduced up to date: gives them
+     * the default time to live counted from now, so they are purged like the others, and
+     * indexes them, so lookups by index never have to scan the store. Also drops plain index
+     * keys kept by earlier versions. Meant to be called once on startup, does nothing for
+     * entries which are already up to date.
+     */
+    public void migrate() {
+        if (defaultTtl != null) {
+            Long assigned = eval(EXPIRE_UNTRACKED, ReturnType.INTEGER, 2, storeKeyBytes, expiryKey,
+                    timestamp(System.currentTimeMillis() + defaultTtl.toMillis()));
+            if (assigned != null && assigned > 0) {
+                LOGGER.info("Entries of " + storeKey + " without expiration: " + assigned + ", they expire in "
+                        + defaultTtl);
+            }
+        }
+        if (hasIndex()) {
+            indexMissingKeys();
+            redisTemplate.execute((RedisCallback<Long>) connection -> connection.del(legacyIndexKeysKey));
+        }
+    }
+
+    @Override
+    public int purgeExpired() {
+        long now = System.currentTimeMillis();
+        Integer purged = redisTemplate.execute((RedisCallback<Integer>) connection -> {
+            int count = 0;
+            Set<byte[]> expired;
+            do {
+                expired = connection.zRangeByScore(expiryKey, 0, now, 0, PURGE_BATCH_SIZE);
+                if (expired.isEmpty()) {
+                    break;
+                }
+                List<byte[]> fields = new ArrayList<>(expired);
+                List<byte[]> values = hasIndex()
+                        ? connection.hMGet(storeKeyBytes, fields.toArray(new byte[fields.size()][]))
+                        : Collections.<byte[]>nCopies(fields.size(), null);
+                count += purge(connection, now, fields, values);
+            } while (expired.size() == PURGE_BATCH_SIZE);
+            return count;
+        });
+        return purged == null ? 0 : purged;
+    }
+
+    private void indexMissingKeys() {
+        redisTemplate.execute((RedisCallback<Object>) connection -> {
+            if (connection.hLen(indexStoreKey) >= connection.hLen(storeKeyBytes)) {
+                return null;
+            }
+            Map<byte[], byte[]> entries = connection.hGetAll(storeKeyBytes);
+            entries.forEach((field, value) -> {
+                String indexKey = indexFunction.apply(deserialize(value));
+                connection.hSet(indexStoreKey, rawField(indexKey), field);
+            });
+            return null;
+        });
+    }
+
+    /**
+     * Returns value of the entry moved from under the legacy key, null when there is none.
+     */
+    private byte[] moveLegacy(String key, byte[] field) {
+        if (legacyKeySerializer == null) {
+            return null;
+        }
+        byte[] legacyField = legacyKeySerializer.serialize(key);
+        byte[] value = eval(MOVE_LEGACY, ReturnType.VALUE, 2, storeKeyBytes, expiryKey,
+                field, legacyField, timestamp(System.currentTimeMillis()));
+        if (value != null && hasIndex()) {
+            String indexKey = indexFunction.apply(deserialize(value));
+            eval(REINDEX_LEGACY, ReturnType.INTEGER, 1, indexStoreKey, rawField(indexKey), legacyField, field);
+        }
+        return value;
+    }
+
+    private boolean purgeIfExpired(String key) {
+        Boolean purged = redisTemplate.execute((RedisCallback<Boolean>) connection -> {
+            byte[] field = rawField(key);
+            byte[] present = connection.hGet(storeKeyBytes, field);
+            return present != null && purge(connection, System.currentTimeMillis(),
+                    Collections.singletonList(field), Collections.singletonList(present)) > 0;
+        });
+        return Boolean.TRUE.equals(purged);
+    }
+
+    private void store(byte[] field, T value, Duration ttl) {
+        String indexKey = hasIndex() ? indexFunction.apply(value) : null;
+        byte[] deadline = ttl == null ? NONE : timestamp(System.currentTimeMillis() + ttl.toMillis());
+        eval(PUT, ReturnType.INTEGER, 3, storeKeyBytes, expiryKey, indexStoreKey,
+                field, serialize(value), deadline, indexField(indexKey));
+    }
+
+    private int purge(RedisConnection connection, long now, List<byte[]> fields, List<byte[]> values) {
+        List<byte[]> args = new ArrayList<>(4 + 2 * fields.size());
+        args.addAll(Arrays.asList(storeKeyBytes, expiryKey, indexStoreKey, timestamp(now)));
+        for (int i = 0; i < fields.size(); i++) {
+            T value = deserialize(values.get(i));
+            String indexKey = value == null || !hasIndex() ? null : indexFunction.apply(value);
+            args.add(fields.get(i));
+            args.add(indexField(indexKey));
+        }
+        Long purged = eval(connection, PURGE, ReturnType.INTEGER, 3, args.toArray(new byte[args.size()][]));
+        return purged == null ? 0 : purged.intValue();
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] rawField(String key) {
+        return ((RedisSerializer<String>) redisTemplate.getHashKeySerializer()).serialize(key);
+    }
+
+    @SuppressWarnings("unchecked")
+    private T deserialize(byte[] value) {
+        return value == null ? null : ((RedisSerializer<T>) redisTemplate.getHashValueSerializer()).deserialize(value);
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] serialize(T value) {
+        return ((RedisSerializer<T>) redisTemplate.getHashValueSerializer()).serialize(value);
+    }
+
+    private byte[] indexField(String indexKey) {
+        return indexKey == null ? NONE : rawField(indexKey);
+    }
+
+    /**
+     * Runs the script by its digest and sends the source only when Redis does not know it yet.
+     */
+    private <R> R eval(Script script, ReturnType returnType, int numKeys, byte[]... keysAndArgs) {
+        return redisTemplate.execute(
+                (RedisCallback<R>) connection -> eval(connection, script, returnType, numKeys, keysAndArgs));
+    }
+
+    private static <R> R eval(RedisConnection connection, Script script, ReturnType returnType, int numKeys,
+                              byte[]... keysAndArgs) {
+        try {
+            return connection.evalSha(script.sha, returnType, numKeys, keysAndArgs);
+        } catch (DataAccessException e) {
+            if (!String.valueOf(Throwables.getRootCause(e).getMessage()).contains("NOSCRIPT")) {
+                throw e;
+            }
+            return connection.eval(script.source, returnType, numKeys, keysAndArgs);
+        }
+    }
+
+    private static byte[] timestamp(long millis) {
+        return bytes(Long.toString(millis));
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static class Script {
+        private final byte[] source;
+        private final String sha;
+
+        Script(String source) {
+            this.source = bytes(source);
+            this.sha = Hashing.sha1().hashBytes(this.source).toString();
+        }
     }
 }
@@ -0,0 +1,40 @@
+/**
+ *  Copyright (c) 2015 Intel Corporation 
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.trustedanalytics.user.invite.outbox;
+
+import java.util.List;
+
+/**
+ * Ids of outbox messages ordered by the time they are due, so sweeps read only messages which
+ * are due instead of the whole outbox. Index is updated after the outbox, entries pointing to
+ * messages which are gone or changed are fixed by the sweep that finds them.
+ */
+public interface DueIndex {
+
+    /**
+     * Adds the id or moves it to the new time.
+     */
+    void schedule(String id, long dueAt);
+
+    void remove(String id);
+
+    /**
+     * Returns up to limit ids due at or before now, the longest waiting first.
+     */
+    List<String> getDue(long now, int limit);
+
+    long size();
+}
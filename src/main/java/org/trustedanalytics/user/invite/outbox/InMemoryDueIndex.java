@@ -0,0 +1,66 @@
+/**
+ *  Copyright (c) 2015 Intel Corporation 
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.trustedanalytics.user.invite.outbox;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+public class InMemoryDueIndex implements DueIndex {
+
+    private final Map<String, Long> dueTimes = new HashMap<>();
+
+    private final NavigableSet<Map.Entry<String, Long>> queue = new TreeSet<>(
+            Comparator.<Map.Entry<String, Long>>comparingLong(Map.Entry::getValue)
+                    .thenComparing(Map.Entry::getKey));
+
+    @Override
+    public synchronized void schedule(String id, long dueAt) {
+        remove(id);
+        dueTimes.put(id, dueAt);
+        queue.add(new AbstractMap.SimpleImmutableEntry<>(id, dueAt));
+    }
+
+    @Override
+    public synchronized void remove(String id) {
+        Long dueAt = dueTimes.remove(id);
+        if (dueAt != null) {
+            queue.remove(new AbstractMap.SimpleImmutableEntry<>(id, dueAt));
+        }
+    }
+
+    @Override
+    public synchronized List<String> getDue(long now, int limit) {
+        List<String> due = new ArrayList<>();
+        for (Map.Entry<String, Long> entry : queue) {
+            if (entry.getValue() > now || due.size() >= limit) {
+                break;
+            }
+            due.add(entry.getKey());
+        }
+        return due;
+    }
+
+    @Override
+    public synchronized long size() {
+        return dueTimes.size();
+    }
+}
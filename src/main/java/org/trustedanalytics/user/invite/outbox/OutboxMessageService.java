@@ -0,0 +1,302 @@
+/**
+ *  Copyright (c) 2015 Intel Corporation 
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.trustedanalytics.user.invite.outbox;
+
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.mail.MailSendException;
+import org.trustedanalytics.user.invite.EmailMessage;
+import org.trustedanalytics.user.invite.MessageService;
+import org.trustedanalytics.user.invite.keyvaluestore.KeyValueStore;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends e-mails in background, so callers do not wait for SMTP server. Messages are written
+ * to the outbox store first and removed once delivered. Failed deliveries are retried with
+ * exponential backoff and after the last attempt are dead-lettered: kept in the store until
+ * their time to live passes, but not sent anymore.
+ *
+ * Outbox is periodically swept for due messages, so e-mails left by an instance that failed
+ * or was restarted are sent by any other one. Sweeps read only ids of due messages from the
+ * due index, where claimed messages are due again when their claim times out. Each message
+ * is claimed in the store before being sent, so it is sent by only one worker at a time.
+ * Messages enqueued (or found by the sweep) together are sent together, over a single SMTP
+ * connection. Workers wait for a rate limiter shared by all of them before sending, so large
+ * batches are spread in time and callers are not held up.
+ */
+public class OutboxMessageService implements MessageService, PublicMetrics, DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OutboxMessageService.class);
+
+    // has to be longer than the whole SMTP transaction, otherwise message may be sent twice
+    private static final long CLAIM_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(2);
+    private static final long MAX_BACKOFF_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final int MAX_BATCH_SIZE = 50;
+    private static final int MAX_SWEEP_SIZE = 1000;
+
+    private final MessageService transport;
+    private final KeyValueStore<OutgoingMessage> outbox;
+    private final DueIndex dueIndex;
+    private final Duration deadLetterTtl;
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final RateLimiter rateLimiter;
+    private final ScheduledThreadPoolExecutor workers;
+
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong deadLettered = new AtomicLong();
+    private final AtomicLong sendTimeTotal = new AtomicLong();
+    private final AtomicLong lastSendTime = new AtomicLong();
+
+    public OutboxMessageService(MessageService transport, KeyValueStore<OutgoingMessage> outbox, DueIndex dueIndex,
+                                int threads, double emailsPerSecond, int maxAttempts, long initialBackoffMillis,
+                                long sweepIntervalMillis, Duration deadLetterTtl) {
+        this.transport = transport;
+        this.outbox = outbox;
+        this.dueIndex = dueIndex;
+        this.deadLetterTtl = deadLetterTtl;
+        this.rateLimiter = RateLimiter.create(emailsPerSecond);
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMillis = initialBackoffMillis;
+
+        workers = new ScheduledThreadPoolExecutor(threads,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("email-outbox-%d").build());
+        // undelivered messages stay in the outbox and are picked up after restart
+        workers.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        workers.setContinueExistingPeriodicTasksAfterShutdownPolicy(false);
+        workers.execute(() -> {
+            indexOutbox();
+            sweep();
+        });
+        workers.scheduleWithFixedDelay(this::sweep, sweepIntervalMillis, sweepIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void sendMimeMessage(String email, String subject, String htmlContent) {
+        OutgoingMessage message = OutgoingMessage.create(email, subject, htmlContent, System.currentTimeMillis());
+        // indexed first, so a message is never left in the outbox without being due
+        dueIndex.schedule(message.getId(), message.getNextAttemptAt());
+        outbox.put(message.getId(), message);
+        pending.incrementAndGet();
+        workers.execute(() -> deliver(Collections.singletonList(message.getId())));
+    }
+
+    @Override
+    public void sendMimeMessages(List<EmailMessage> messages) {
+        long now = System.currentTimeMillis();
+        List<String> ids = new ArrayList<>(messages.size());
+        for (EmailMessage message : messages) {
+            OutgoingMessage outgoing = OutgoingMessage.create(message.getEmail(), message.getSubject(),
+                    message.getHtmlContent(), now);
+            dueIndex.schedule(outgoing.getId(), now);
+            outbox.put(outgoing.getId(), outgoing);
+            pending.incrementAndGet();
+            ids.add(outgoing.getId());
+        }
+        deliverInBatches(ids);
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        long sentCount = sent.get();
+        return Arrays.asList(
+                new Metric<Long>("email.outbox.pending", pending.get()),
+                new Metric<Long>("email.outbox.sent", sentCount),
+                new Metric<Long>("email.outbox.retried", retried.get()),
+                new Metric<Long>("email.outbox.dead_lettered", deadLettered.get()),
+                new Metric<Long>("email.outbox.send.time.last", lastSendTime.get()),
+                new Metric<Long>("email.outbox.send.time.avg", sentCount == 0 ? 0 : sendTimeTotal.get() / sentCount));
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        workers.shutdown();
+        workers.awaitTermination(CLAIM_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private void deliverInBatches(List<String> ids) {
+        for (int from = 0; from < ids.size(); from += MAX_BATCH_SIZE) {
+            List<String> batch = ids.subList(from, Math.min(from + MAX_BATCH_SIZE, ids.size()));
+            workers.execute(() -> deliver(batch));
+        }
+    }
+
+    private void deliver(List<String> ids) {
+        // permits are taken before claiming, so waiting does not count towards claim timeout
+        rateLimiter.acquire(ids.size());
+        try {
+            long start = System.currentTimeMillis();
+            Map<EmailMessage, OutgoingMessage> claimed = new IdentityHashMap<>();
+            for (String id : ids) {
+                OutgoingMessage message = claim(id, start);
+                if (message != null) {
+                    claimed.put(new EmailMessage(message.getEmail(), message.getSubject(),
+                            message.getHtmlContent()), message);
+                }
+            }
+            if (claimed.isEmpty()) {
+                return;
+            }
+
+            Map<Object, Exception> failedMessages = send(claimed.keySet());
+
+            long sendTime = System.currentTimeMillis() - start;
+            claimed.forEach((email, message) -> {
+                Exception failure = failedMessages.get(email);
+                if (failure == null) {
+                    outbox.remove(message.getId());
+                    dueIndex.remove(message.getId());
+                    pending.decrementAndGet();
+                    sent.incrementAndGet();
+                    sendTimeTotal.addAndGet(sendTime);
+                } else {
+                    onFailure(message, failure);
+                }
+            });
+            lastSendTime.set(sendTime);
+        } catch (RuntimeException e) {
+            // messages stay claimed until timeout and are picked up by the sweep
+            LOGGER.warn("Unable to update e-mail outbox for messages " + ids, e);
+        }
+    }
+
+    /**
+     * Returns messages that failed, all of them when it is not known which ones.
+     */
+    private Map<Object, Exception> send(Collection<EmailMessage> messages) {
+        try {
+            if (messages.size() == 1) {
+                EmailMessage message = messages.iterator().next();
+                transport.sendMimeMessage(message.getEmail(), message.getSubject(), message.getHtmlContent());
+            } else {
+                transport.sendMimeMessages(new ArrayList<>(messages));
+            }
+            return Collections.emptyMap();
+        } catch (MailSendException e) {
+            if (!e.getFailedMessages().isEmpty()) {
+                return e.getFailedMessages();
+            }
+            return allFailed(messages, e);
+        } catch (RuntimeException e) {
+            return allFailed(messages, e);
+        }
+    }
+
+    private static Map<Object, Exception> allFailed(Collection<EmailMessage> messages, Exception e) {
+        Map<Object, Exception> failedMessages = new IdentityHashMap<>();
+        messages.forEach(message -> failedMessages.put(message, e));
+        return failedMessages;
+    }
+
+    /**
+     * Returns null when the message is gone, dead-lettered or not due, its index entry is fixed
+     * then. Claimed message is due again when the claim times out, in case the worker fails.
+     */
+    private OutgoingMessage claim(String id, long now) {
+        AtomicBoolean claimed = new AtomicBoolean();
+        OutgoingMessage message = outbox.compute(id, current -> {
+            claimed.set(current != null && current.isDeliverable(now));
+            return claimed.get() ? current.claimedUntil(now + CLAIM_TIMEOUT_MILLIS) : current;
+        });
+        if (message == null || message.isDeadLettered()) {
+            dueIndex.remove(id);
+        } else {
+            dueIndex.schedule(id, dueAt(message));
+        }
+        return claimed.get() ? message : null;
+    }
+
+    private static long dueAt(OutgoingMessage message) {
+        return Math.max(message.getNextAttemptAt(), message.getClaimedUntil());
+    }
+
+    private void onFailure(OutgoingMessage message, Exception e) {
+        int attempt = message.getAttempts() + 1;
+        if (attempt >= maxAttempts) {
+            LOGGER.error("Giving up sending e-mail " + message.getId() + " to " + message.getEmail()
+                    + " after " + attempt + " attempts", e);
+            outbox.put(message.getId(), message.deadLettered(e.getMessage()), deadLetterTtl);
+            dueIndex.remove(message.getId());
+            pending.decrementAndGet();
+            deadLettered.incrementAndGet();
+            return;
+        }
+
+        long backoff = backoffMillis(attempt);
+        LOGGER.warn("Sending e-mail " + message.getId() + " to " + message.getEmail() + " failed, attempt "
+                + attempt + " of " + maxAttempts + ", retrying in " + backoff + " ms", e);
+        OutgoingMessage retry = message.retryAt(System.currentTimeMillis() + backoff, e.getMessage());
+        outbox.put(retry.getId(), retry);
+        dueIndex.schedule(retry.getId(), retry.getNextAttemptAt());
+        retried.incrementAndGet();
+        workers.schedule(() -> deliver(Collections.singletonList(message.getId())), backoff, TimeUnit.MILLISECONDS);
+    }
+
+    private long backoffMillis(int attempt) {
+        return Math.min(initialBackoffMillis << Math.min(attempt - 1, 30), MAX_BACKOFF_MILLIS);
+    }
+
+    private void sweep() {
+        try {
+            deliverInBatches(dueIndex.getDue(System.currentTimeMillis(), MAX_SWEEP_SIZE));
+            pending.set(dueIndex.size());
+        } catch (RuntimeException e) {
+            // exception would cancel further sweeps
+            LOGGER.warn("Unable to sweep e-mail outbox", e);
+        }
+    }
+
+    /**
+     * Indexes messages stored before the due index was introduced and gives dead letters their
+     * time to live, counted from creation so restarts do not extend it. Reads the whole outbox,
+     * so it is done once on startup only.
+     */
+    private void indexOutbox() {
+        try {
+            long now = System.currentTimeMillis();
+            for (OutgoingMessage message : outbox.values()) {
+                if (message.isDeadLettered()) {
+                    long ttl = Math.max(0, message.getCreatedAt() + deadLetterTtl.toMillis() - now);
+                    outbox.compute(message.getId(), current -> current, Duration.ofMillis(ttl));
+                } else {
+                    dueIndex.schedule(message.getId(), dueAt(message));
+                }
+            }
+        } catch (RuntimeException e) {
+            LOGGER.warn("Unable to index e-mail outbox", e);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/**
+ *  Copyright (c) 2015 Intel Corporation 
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.trustedanalytics.user.invite.outbox;
+
+import java.util.UUID;
+
+/**
+ * E-mail waiting in the outbox together with its delivery state. Instances are immutable,
+ * every state change produces a copy that is written back to the store.
+ */
+public class OutgoingMessage {
+
+    private String id;
+
+    private String email;
+
+    private String subject;
+
+    private String htmlContent;
+
+    private long createdAt;
+
+    private int attempts;
+
+    private long nextAttemptAt;
+
+    private long claimedUntil;
+
+    private boolean deadLettered;
+
+    private String lastError;
+
+    public OutgoingMessage() {
+    }
+
+    private OutgoingMessage(OutgoingMessage other) {
+        this.id = other.id;
+        this.email = other.email;
+        this.subject = other.subject;
+        this.htmlContent = other.htmlContent;
+        this.createdAt = other.createdAt;
+        this.attempts = other.attempts;
+        this.nextAttemptAt = other.nextAttemptAt;
+        this.claimedUntil = other.claimedUntil;
+        this.deadLettered = other.deadLettered;
+        this.lastError = other.lastError;
+    }
+
+    public static OutgoingMessage create(String email, String subject, String htmlContent, long now) {
+        OutgoingMessage message = new OutgoingMessage();
+        message.id = UUID.randomUUID().toString();
+        message.email = email;
+        message.subject = subject;
+        message.htmlContent = htmlContent;
+        message.createdAt = now;
+        message.nextAttemptAt = now;
+        return message;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public String getHtmlContent() {
+        return htmlContent;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public long getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    public long getClaimedUntil() {
+        return claimedUntil;
+    }
+
+    public boolean isDeadLettered() {
+        return deadLettered;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    /**
+     * Message is due and nobody is sending it at the moment.
+     */
+    boolean isDeliverable(long now) {
+        return !deadLettered && nextAttemptAt <= now && claimedUntil <= now;
+    }
+
+    OutgoingMessage claimedUntil(long until) {
+        OutgoingMessage copy = new OutgoingMessage(this);
+        copy.claimedUntil = until;
+        return copy;
+    }
+
+    OutgoingMessage retryAt(long at, String error) {
+        OutgoingMessage copy = new OutgoingMessage(this);
+        copy.attempts = attempts + 1;
+        copy.nextAttemptAt = at;
+        copy.claimedUntil = 0;
+        copy.lastError = error;
+        return copy;
+    }
+
+    OutgoingMessage deadLettered(String error) {
+        OutgoingMessage copy = new OutgoingMessage(this);
+        copy.attempts = attempts + 1;
+        copy.claimedUntil = 0;
+        copy.deadLettered = true;
+        copy.lastError = error;
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        return "OutgoingMessage [id=" + id + ", email=" + email + ", attempts=" + attempts
+            + ", deadLettered=" + deadLettered + "]";
+    }
+}
@@ -0,0 +1,58 @@
+/**
+ *  Copyright (c) 2015 Intel Corporation 
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.trustedanalytics.user.invite.outbox;
+
+import org.springframework.data.redis.core.RedisOperations;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps ids in a sorted set scored with due times. Ids are random and say nothing about the
+ * messages, so unlike the outbox itself they are not hashed.
+ */
+public class RedisDueIndex implements DueIndex {
+
+    private final RedisOperations<String, String> redisTemplate;
+
+    private final String key;
+
+    public RedisDueIndex(RedisOperations<String, String> redisTemplate, String key) {
+        this.redisTemplate = redisTemplate;
+        this.key = key;
+    }
+
+    @Override
+    public void schedule(String id, long dueAt) {
+        redisTemplate.opsForZSet().add(key, id, dueAt);
+    }
+
+    @Override
+    public void remove(String id) {
+        redisTemplate.opsForZSet().remove(key, id);
+    }
+
+    @Override
+    public List<String> getDue(long now, int limit) {
+        return new ArrayList<>(redisTemplate.opsForZSet().rangeByScore(key, 0, now, 0, limit));
+    }
+
+    @Override
+    public long size() {
+        Long size = redisTemplate.opsForZSet().zCard(key);
+        return size == null ? 0 : size;
+    }
+}
@@ -25,6 +25,7 @@ import org.trustedanalytics.user.current.UserDetailsFinder;
 import org.trustedanalytics.user.invite.access.AccessInvitationsService;
 import org.trustedanalytics.user.invite.InvitationNotSentException;
 import org.trustedanalytics.user.invite.InvitationsService;
+import org.trustedanalytics.user.invite.keyvaluestore.IndexPage;
 
 import org.trustedanalytics.user.common.BlacklistEmailValidator;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -32,6 +33,7 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -52,6 +54,8 @@ public class InvitationsController {
     //:.+ is required, otherwise Spring truncates value with @PathVariable up to last dot
     public static final String DELETE_INVITATION_URL = "/{email:.+}";
 
+    static final int MAX_PAGE_SIZE = 1000;
+
     private final InvitationsService invitationsService;
 
     private final AccessInvitationsService accessInvitationsService;
@@ -117,6 +121,28 @@ public class InvitationsController {
         return invitationsService.getPendingInvitationsEmails();
     }
 
+    @ApiOperation(
+            value = "Get a page of pending invitations.",
+            notes = "Privilege level: Consumer of this endpoint must have a valid token containing console.admin scope. "
+                    + "Emails are sorted alphabetically within the page, next page is requested with nextCursor of "
+                    + "the current one.")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "OK", response = InvitationsPage.class),
+            @ApiResponse(code = 500, message = "Internal server error, e.g. error connecting to CloudController")
+    })
+    @RequestMapping(method = RequestMethod.GET, params = "limit")
+    @PreAuthorize(IS_ADMIN_CONDITION)
+    public InvitationsPage getPendingInvitationsPage(@RequestParam("limit") int limit,
+                                                     @RequestParam(value = "prefix", defaultValue = "") String prefix,
+                                                     @RequestParam(value = "cursor", required = false) String cursor,
+                                                     @RequestParam(value = "sort", defaultValue = "asc") String sort) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        boolean descending = "desc".equalsIgnoreCase(sort);
+
+        IndexPage page = invitationsService.getPendingInvitationsEmails(prefix, cursor, pageSize, descending);
+        return new InvitationsPage(page.getKeys(), page.getNextCursor());
+    }
+
     @ApiOperation(
             value = "Resend invitation to the email.",
             notes = "Privilege level: Consumer of this endpoint must have a valid token containing console.admin scope ")
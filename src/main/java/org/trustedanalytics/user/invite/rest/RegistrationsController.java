@@ -80,10 +80,10 @@ public class RegistrationsController {
         Optional<OrgAndUserGuids> orgAndUserGuids = Optional.empty();
         String email = sc.getEmail();
         if (accessInvitationsService.getOrgCreationEligibility(email)) {
-            orgAndUserGuids = invitationsService.createUser(email, newUser.getPassword(), newUser.getOrg());
+            orgAndUserGuids = invitationsService.createUser(sc, newUser.getPassword(), newUser.getOrg());
         }
         else {
-            invitationsService.createUser(email, newUser.getPassword());
+            invitationsService.createUser(sc, newUser.getPassword());
         }
         securityCodeService.redeem(sc);
         accessInvitationsService.redeemAccessInvitations(email);
@@ -15,14 +15,18 @@
  */
 package org.trustedanalytics.user.invite.securitycode;
 
+import com.google.common.base.Preconditions;
+import org.trustedanalytics.user.invite.keyvaluestore.IndexPage;
 import org.trustedanalytics.user.invite.keyvaluestore.KeyValueStore;
 
 import java.util.Optional;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.UUID;
-import java.util.stream.Collectors;
 
 public class SecurityCodeService {
+    private static final int KEYS_PAGE_SIZE = 1000;
+
     private final KeyValueStore<SecurityCode> store;
 
     public SecurityCodeService( KeyValueStore<SecurityCode> store) {
@@ -48,24 +52,37 @@ public class SecurityCodeService {
     }
 
     public SecurityCode verify(String code) {
-        if (!store.hasKey(code)) {
+        SecurityCode securityCode = store.get(code);
+        if (securityCode == null) {
             throw new InvalidSecurityCodeException("Invalid security code " + code);
         }
-
-        return store.get(code);
+        return securityCode;
     }
 
     public Optional<SecurityCode> findByMail(String email) {
-        return store.values()
-                .stream()
-                .filter(entry -> entry.getEmail().equals(email))
-                .findFirst();
+        checkIndexed();
+        // codes stored before the index was introduced are indexed on startup, see RedisStore
+        return Optional.ofNullable(store.getByIndex(email));
     }
 
     public Set<String> getKeys() {
-        return store.values()
-                .stream()
-                .map(entry -> entry.getEmail())
-                .collect(Collectors.toSet());
+        checkIndexed();
+        Set<String> keys = new TreeSet<>();
+        String cursor = null;
+        do {
+            IndexPage page = store.getIndexKeys("", cursor, KEYS_PAGE_SIZE, false);
+            keys.addAll(page.getKeys());
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return keys;
+    }
+
+    public IndexPage getEmails(String prefix, String cursor, int limit, boolean descending) {
+        checkIndexed();
+        return store.getIndexKeys(prefix, cursor, limit, descending);
+    }
+
+    private void checkIndexed() {
+        Preconditions.checkState(store.hasIndex(), "Security codes store has no e-mail index");
     }
 }
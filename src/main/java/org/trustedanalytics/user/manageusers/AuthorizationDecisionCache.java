@@ -0,0 +1,133 @@
+/**
+ *  Copyright (c) 2015 Intel Corporation 
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.trustedanalytics.user.manageusers;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.trustedanalytics.user.common.GenerationGuard;
+import org.trustedanalytics.user.manageusers.UsersController.AuthorizationScope;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+
+/**
+ * Short-lived cache of "is the user a manager of given org/space" decisions. Console sends
+ * bursts of calls against the same scope, so the check is made against Cloud Controller once
+ * per burst. Role changes made through {@link CfUsersService} drop decisions of the affected user.
+ */
+public class AuthorizationDecisionCache implements RoleChangeListener, PublicMetrics {
+
+    private final Cache<DecisionKey, Boolean> decisions;
+
+    // a check made while roles of the user were being changed is not cached
+    private final GenerationGuard generationGuard = new GenerationGuard();
+
+    public AuthorizationDecisionCache(long maxSize, long ttlSeconds) {
+        this.decisions = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+    }
+
+    boolean isManager(UUID userId, AuthorizationScope scope, UUID scopeId, BooleanSupplier check) {
+        DecisionKey key = new DecisionKey(userId, scope, scopeId);
+        return generationGuard.getIfPresentOrLoad(decisions, key, userId, check::getAsBoolean);
+    }
+
+    /**
+     * Org managers are also managers of all spaces in the org. Spaces are not tracked by org
+     * here, so all space decisions of the user are dropped along with the org one; they are
+     * checked again on next use.
+     */
+    public void invalidateOrg(UUID userId, UUID orgId) {
+        invalidate(userId, key -> key.scope == AuthorizationScope.SPACE || key.scopeId.equals(orgId));
+    }
+
+    public void invalidateSpace(UUID userId, UUID spaceId) {
+        invalidate(userId, key -> key.scope == AuthorizationScope.SPACE && key.scopeId.equals(spaceId));
+    }
+
+    public void invalidateUser(UUID userId) {
+        invalidate(userId, key -> true);
+    }
+
+    private void invalidate(UUID userId, Predicate<DecisionKey> filter) {
+        generationGuard.invalidate(decisions, userId, key -> key.userId.equals(userId) && filter.test(key));
+    }
+
+    @Override
+    public void orgRolesChanged(UUID userGuid, UUID orgGuid) {
+        invalidateOrg(userGuid, orgGuid);
+    }
+
+    @Override
+    public void spaceRolesChanged(UUID userGuid, UUID spaceGuid) {
+        invalidateSpace(userGuid, spaceGuid);
+    }
+
+    @Override
+    public void userDeleted(UUID userGuid) {
+        invalidateUser(userGuid);
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        CacheStats stats = decisions.stats();
+        return Arrays.asList(
+                new Metric<Long>("authorization.cache.hits", stats.hitCount()),
+                new Metric<Long>("authorization.cache.misses", stats.missCount()),
+                new Metric<Long>("authorization.cache.size", decisions.size()));
+    }
+
+    private static final class DecisionKey {
+        private final UUID userId;
+        private final AuthorizationScope scope;
+        private final UUID scopeId;
+
+        DecisionKey(UUID userId, AuthorizationScope scope, UUID scopeId) {
+            this.userId = userId;
+            this.scope = scope;
+            this.scopeId = scopeId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof DecisionKey)) {
+                return false;
+            }
+            DecisionKey other = (DecisionKey) o;
+            return userId.equals(other.userId) && scope == other.scope && scopeId.equals(other.scopeId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(userId, scope, scopeId);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ *  Copyright (c) 2015 Intel Corporation 
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.trustedanalytics.user.manageusers;
+
+import lombok.Getter;
+
+/**
+ * Outcome of a single row of bulk user request.
+ */
+public class BulkUserResult {
+    public enum State {
+        ADDED,
+        INVITED,
+        INVITATION_UPDATED,
+        DUPLICATE,
+        INVALID,
+        FAILED
+    }
+
+    @Getter
+    private final String username;
+
+    @Getter
+    private final State state;
+
+    @Getter
+    private final String details;
+
+    public BulkUserResult(String username, State state, String details) {
+        this.username = username;
+        this.state = state;
+        this.details = details;
+    }
+
+    public BulkUserResult(String username, State state) {
+        this(username, state, null);
+    }
+}
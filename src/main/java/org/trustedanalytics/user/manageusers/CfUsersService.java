@@ -19,11 +19,11 @@ import static java.util.stream.Collectors.groupingBy;
 import static java.util.stream.Collectors.toList;
 
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
 import com.google.common.collect.ObjectArrays;
 import com.google.common.collect.Sets;
 
 import org.trustedanalytics.cloud.cc.api.CcOperations;
-import org.trustedanalytics.cloud.cc.api.CcSpace;
 import org.trustedanalytics.cloud.cc.api.manageusers.Role;
 import org.trustedanalytics.cloud.cc.api.manageusers.User;
 import org.trustedanalytics.cloud.cc.api.queries.Filter;
@@ -38,42 +38,87 @@ import org.trustedanalytics.user.invite.rest.EntityNotFoundException;
 import org.trustedanalytics.user.invite.securitycode.NoSuchUserException;
 import rx.Observable;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Set;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
 public class CfUsersService implements UsersService {
 
+    private static final String ORG_USERS = "org-users";
+    private static final String SPACE_USERS = "space-users";
+    private static final String ORG_MANAGERS = "org-managers";
+    private static final String SPACE_MANAGERS = "space-managers";
+    private static final String SPACE_ORG = "space-org";
+
+    // requests looked up in UAA together and invited with one batch of e-mails
+    private static final int BULK_CHUNK_SIZE = 50;
+
+    private static final long DEFAULT_USER_NAMES_CACHE_SIZE = 10000;
+    private static final long DEFAULT_USER_NAMES_CACHE_TTL_SECONDS = 600;
+
     private final CcOperations ccClient;
     private final UaaOperations uaaClient;
     private final InvitationsService invitationsService;
     private final AccessInvitationsService accessInvitationsService;
+    private final UserNamesCache userNamesCache;
+    private final List<RoleChangeListener> roleChangeListeners;
+    private final Executor ccCallsExecutor;
+    private final Function<Collection<String>, Map<String, UUID>> userIdsLookup;
+    private final RequestScopedMemo memo = new RequestScopedMemo();
 
     public CfUsersService(CcOperations ccClient,
                           UaaOperations uaaClient,
                           InvitationsService invitationsService,
                           AccessInvitationsService accessInvitationsService) {
+        this(ccClient, uaaClient, invitationsService, accessInvitationsService,
+                new UserNamesCache(DEFAULT_USER_NAMES_CACHE_SIZE, DEFAULT_USER_NAMES_CACHE_TTL_SECONDS),
+                Collections.emptyList(),
+                Runnable::run,
+                usernames -> findUserIdsOneByOne(uaaClient, usernames));
+    }
+
+    public CfUsersService(CcOperations ccClient,
+                          UaaOperations uaaClient,
+                          InvitationsService invitationsService,
+                          AccessInvitationsService accessInvitationsService,
+                          UserNamesCache userNamesCache,
+                          List<RoleChangeListener> roleChangeListeners,
+                          Executor ccCallsExecutor,
+                          Function<Collection<String>, Map<String, UUID>> userIdsLookup) {
         super();
         this.ccClient = ccClient;
         this.uaaClient = uaaClient;
         this.invitationsService = invitationsService;
         this.accessInvitationsService = accessInvitationsService;
+        this.userNamesCache = userNamesCache;
+        this.roleChangeListeners = roleChangeListeners;
+        this.ccCallsExecutor = ccCallsExecutor;
+        this.userIdsLookup = userIdsLookup;
     }
 
     @Override
     public Collection<User> getOrgUsers(UUID orgGuid) {
-        return getUsersWithRoles(orgGuid, ccClient::getOrgUsersWithRoles);
+        return memo.get(ORG_USERS, orgGuid,
+                () -> getUsersWithRoles(orgGuid, ccClient::getOrgUsersWithRoles));
     }
 
     @Override
     public Collection<User> getSpaceUsers(UUID spaceGuid, Optional<String> username) {
-        Collection<User> users = getUsersWithRoles(spaceGuid, ccClient::getSpaceUsersWithRoles);
+        Collection<User> users = memo.get(SPACE_USERS, spaceGuid,
+                () -> getUsersWithRoles(spaceGuid, ccClient::getSpaceUsersWithRoles));
         if (username.isPresent()) {
             return users.stream()
                     .filter(user -> user.getUsername().equals(username.get()))
@@ -118,6 +163,62 @@ public class CfUsersService implements UsersService {
         });
     }
 
+    @Override
+    public void addOrgUsers(List<UserRequest> userRequests, UUID orgGuid, String currentUser,
+                            Consumer<BulkUserResult> results) {
+        for (List<UserRequest> chunk : Lists.partition(userRequests, BULK_CHUNK_SIZE)) {
+            Map<String, UUID> existing;
+            try {
+                existing = userIdsLookup.apply(chunk.stream().map(UserRequest::getUsername).collect(toList()));
+            } catch (RuntimeException e) {
+                chunk.forEach(request -> results.accept(new BulkUserResult(request.getUsername(),
+                        BulkUserResult.State.FAILED, e.getMessage())));
+                continue;
+            }
+
+            // users found here are not looked up again when invitations are sent
+            List<String> toInvite = new ArrayList<>();
+            for (UserRequest request : chunk) {
+                try {
+                    UUID userGuid = existing.get(request.getUsername());
+                    Set<Role> roles = ImmutableSet.<Role>builder()
+                            .addAll(request.getRoles())
+                            .add(Role.USERS)
+                            .build();
+                    if (userGuid != null) {
+                        assignOrgRolesToUser(userGuid, orgGuid, roles.toArray(new Role[]{}));
+                        results.accept(new BulkUserResult(request.getUsername(), BulkUserResult.State.ADDED));
+                    } else if (accessInvitationsService.createOrUpdateInvitation(request.getUsername(),
+                            ui -> ui.addOrgAccessInvitation(orgGuid, roles))
+                            == AccessInvitationsService.CreateOrUpdateState.CREATED) {
+                        toInvite.add(request.getUsername());
+                    } else {
+                        results.accept(new BulkUserResult(request.getUsername(),
+                                BulkUserResult.State.INVITATION_UPDATED));
+                    }
+                } catch (RuntimeException e) {
+                    results.accept(new BulkUserResult(request.getUsername(), BulkUserResult.State.FAILED,
+                            e.getMessage()));
+                }
+            }
+
+            if (!toInvite.isEmpty()) {
+                Map<String, Exception> failures = invitationsService.sendInviteEmails(toInvite, currentUser);
+                toInvite.forEach(username -> results.accept(failures.containsKey(username)
+                        ? new BulkUserResult(username, BulkUserResult.State.FAILED,
+                                failures.get(username).getMessage())
+                        : new BulkUserResult(username, BulkUserResult.State.INVITED)));
+            }
+        }
+    }
+
+    private static Map<String, UUID> findUserIdsOneByOne(UaaOperations uaaClient, Collection<String> usernames) {
+        Map<String, UUID> ids = new HashMap<>();
+        usernames.forEach(username -> uaaClient.findUserIdByName(username)
+                .ifPresent(pair -> ids.put(username, pair.getGuid())));
+        return ids;
+    }
+
     private void inviteUserToOrg(String username, String currentUser, UUID orgGuid, Set<Role> roles) {
 
         AccessInvitationsService.CreateOrUpdateState state =
@@ -138,26 +239,35 @@ public class CfUsersService implements UsersService {
         }
     }
 
-    private boolean isUserAssignedToOrg(UUID userGuid, UUID orgGuid) {
+    private Optional<User> findOrgMember(UUID userGuid, UUID orgGuid) {
         return this.getOrgUsers(orgGuid)
                 .stream()
-                .anyMatch(member -> member.getGuid().equals(userGuid));
+                .filter(member -> member.getGuid().equals(userGuid))
+                .findFirst();
     }
 
-    private boolean isUserAssignedToSpace(UUID userGuid, UUID spaceGuid) {
+    private Optional<User> findSpaceMember(UUID userGuid, UUID spaceGuid) {
         return this.getSpaceUsers(spaceGuid, Optional.empty())
                 .stream()
-                .anyMatch(member -> member.getGuid().equals(userGuid));
+                .filter(member -> member.getGuid().equals(userGuid))
+                .findFirst();
     }
 
     @Override
     public List<Role> updateOrgUserRoles(UUID userGuid, UUID orgGuid, UserRolesRequest userRolesRequest) {
-        if(isUserAssignedToOrg(userGuid, orgGuid)) {
+        Optional<User> member = findOrgMember(userGuid, orgGuid);
+        if(member.isPresent()) {
+            Collection<Role> currentRoles = member.get().getRoles();
             Role[] rolesToRemove = Role.ORG_ROLES.stream()
                     .filter(x -> !x.equals(Role.USERS) && !userRolesRequest.getRoles().contains(x))
+                    .filter(currentRoles::contains)
+                    .toArray(Role[]::new);
+            Role[] rolesToAdd = userRolesRequest.getRoles().stream()
+                    .filter(x -> !currentRoles.contains(x))
+                    .distinct()
                     .toArray(Role[]::new);
             revokeOrgRolesFromUser(userGuid, orgGuid, rolesToRemove);
-            assignOrgRolesToUser(userGuid, orgGuid, userRolesRequest.getRoles().stream().toArray(Role[]::new));
+            assignOrgRolesToUser(userGuid, orgGuid, rolesToAdd);
             return userRolesRequest.getRoles();
         } else {
             throw new NoSuchUserException(String.format("User %s does not exist in organization %s.",
@@ -167,15 +277,24 @@ public class CfUsersService implements UsersService {
 
     @Override
     public List<Role> updateSpaceUserRoles(UUID userGuid, UUID spaceGuid, UserRolesRequest userRolesRequest) {
-        Optional<UUID> orgGuid = getOrgFromSpace(spaceGuid);
-        if(isUserAssignedToSpace(userGuid, spaceGuid) ||
-                (orgGuid.isPresent() && isUserAssignedToOrg(userGuid, orgGuid.get()))) {
+        Optional<User> spaceMember = findSpaceMember(userGuid, spaceGuid);
+        boolean isMember = spaceMember.isPresent() || getOrgFromSpace(spaceGuid)
+                .flatMap(orgGuid -> findOrgMember(userGuid, orgGuid))
+                .isPresent();
+        if(isMember) {
+            Collection<Role> currentRoles = spaceMember
+                    .map(User::getRoles)
+                    .orElse(Collections.emptyList());
             Role[] rolesToRemove = Role.SPACE_ROLES.stream()
                     .filter(x -> !userRolesRequest.getRoles().contains(x))
+                    .filter(currentRoles::contains)
+                    .toArray(Role[]::new);
+            Role[] rolesToAdd = userRolesRequest.getRoles().stream()
+                    .filter(x -> !currentRoles.contains(x))
+                    .distinct()
                     .toArray(Role[]::new);
             revokeSpaceRolesFromUser(userGuid, spaceGuid, rolesToRemove);
-
-            assignSpaceRolesToUser(userGuid, spaceGuid, userRolesRequest.getRoles().stream().toArray(Role[]::new));
+            assignSpaceRolesToUser(userGuid, spaceGuid, rolesToAdd);
             return userRolesRequest.getRoles();
         } else {
             throw new NoSuchUserException(String.format("User %s does not exist in space %s.",
@@ -185,22 +304,38 @@ public class CfUsersService implements UsersService {
 
     @Override
     public void assignOrgRolesToUser(UUID userGuid, UUID orgGuid, Role ... roles) {
-        Arrays.stream(roles).forEach(role -> ccClient.assignOrgRole(userGuid, orgGuid, role));
+        try {
+            forEachRoleConcurrently(roles, role -> ccClient.assignOrgRole(userGuid, orgGuid, role));
+        } finally {
+            invalidateOrg(userGuid, orgGuid);
+        }
     }
 
     @Override
     public void assignSpaceRolesToUser(UUID userGuid, UUID spaceGuid, Role ... roles) {
-        Arrays.stream(roles).forEach(role -> ccClient.assignSpaceRole(userGuid, spaceGuid, role));
+        try {
+            forEachRoleConcurrently(roles, role -> ccClient.assignSpaceRole(userGuid, spaceGuid, role));
+        } finally {
+            invalidateSpace(userGuid, spaceGuid);
+        }
     }
 
     @Override
     public void revokeOrgRolesFromUser(UUID userGuid, UUID orgGuid, Role ... roles) {
-        Arrays.stream(roles).forEach(role -> ccClient.revokeOrgRole(userGuid, orgGuid, role));
+        try {
+            forEachRoleConcurrently(roles, role -> ccClient.revokeOrgRole(userGuid, orgGuid, role));
+        } finally {
+            invalidateOrg(userGuid, orgGuid);
+        }
     }
 
     @Override
     public void revokeSpaceRolesFromUser(UUID userGuid, UUID spaceGuid, Role ... roles) {
-        Arrays.stream(roles).forEach(role -> ccClient.revokeSpaceRole(userGuid, spaceGuid, role));
+        try {
+            forEachRoleConcurrently(roles, role -> ccClient.revokeSpaceRole(userGuid, spaceGuid, role));
+        } finally {
+            invalidateSpace(userGuid, spaceGuid);
+        }
     }
 
     @Override
@@ -218,6 +353,8 @@ public class CfUsersService implements UsersService {
             );
 
         Role.ORG_ROLES.stream().forEach(role -> ccClient.revokeOrgRole(userGuid, orgGuid, role));
+        roleChangeListeners.forEach(listener -> listener.orgRolesChanged(userGuid, orgGuid));
+        memo.invalidateAll();
     }
 
     @Override
@@ -227,39 +364,124 @@ public class CfUsersService implements UsersService {
         }
 
         Role.SPACE_ROLES.stream().forEach(role -> ccClient.revokeSpaceRole(userGuid, spaceGuid, role));
+        invalidateSpace(userGuid, spaceGuid);
     }
 
     @Override
     public boolean isOrgManager(UUID userId, UUID orgId) {
-        return ccClient.getOrgUsers(orgId, Role.MANAGERS)
-            .stream()
-            .map(user -> user.getGuid())
-            .anyMatch(uuid -> uuid.equals(userId));
+        return memo.get(ORG_MANAGERS, orgId, () -> ccClient.getOrgUsers(orgId, Role.MANAGERS)
+                .stream()
+                .map(user -> user.getGuid())
+                .collect(Collectors.toSet()))
+            .contains(userId);
     }
 
     @Override
     public boolean isSpaceManager(UUID userId, UUID spaceId) {
-        Observable<CcSpace> space = ccClient.getSpace(spaceId);
-        if(isOrgManager(userId, space.toBlocking().single().getOrgGuid())) {
-            return true;
-        }
-        return ccClient.getSpaceUsers(spaceId, Role.MANAGERS)
-            .stream()
-            .map(user -> user.getGuid())
-            .anyMatch(uuid -> uuid.equals(userId));
+        CompletableFuture<Boolean> orgManager = CompletableFuture.supplyAsync(
+                () -> isOrgManager(userId, getOrgFromSpace(spaceId).get()), ccCallsExecutor);
+        CompletableFuture<Boolean> spaceManager = CompletableFuture.supplyAsync(
+                () -> memo.get(SPACE_MANAGERS, spaceId, () -> ccClient.getSpaceUsers(spaceId, Role.MANAGERS)
+                        .stream()
+                        .map(user -> user.getGuid())
+                        .collect(Collectors.toSet()))
+                    .contains(userId), ccCallsExecutor);
+        return anyGranted(orgManager, spaceManager);
     }
 
     @Override
     public void deleteUser(UUID guid) {
         ccClient.deleteUser(guid);
         uaaClient.deleteUser(guid);
+        userNamesCache.invalidate(guid);
+        roleChangeListeners.forEach(listener -> listener.userDeleted(guid));
+        memo.invalidateAll();
     }
 
     private Optional<UUID>  getOrgFromSpace(UUID spaceGuid) {
-        return ccClient.getSpace(spaceGuid)
+        return memo.get(SPACE_ORG, spaceGuid, () -> ccClient.getSpace(spaceGuid)
                 .map(space -> Optional.of(space.getOrgGuid()))
                 .toBlocking()
-                .singleOrDefault(Optional.empty());
+                .singleOrDefault(Optional.empty()));
+    }
+
+    /**
+     * Completes as soon as one of the checks grants, without waiting for the other one. A
+     * failed check only matters when the other one does not grant.
+     */
+    private static boolean anyGranted(CompletableFuture<Boolean> first, CompletableFuture<Boolean> second) {
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        first.thenAccept(granted -> {
+            if (granted) {
+                result.complete(true);
+            }
+        });
+        second.thenAccept(granted -> {
+            if (granted) {
+                result.complete(true);
+            }
+        });
+        CompletableFuture.allOf(first, second).whenComplete((ignored, error) -> {
+            if (isGranted(first) || isGranted(second)) {
+                result.complete(true);
+            } else if (error != null) {
+                result.completeExceptionally(error);
+            } else {
+                result.complete(false);
+            }
+        });
+
+        return join(result);
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static boolean isGranted(CompletableFuture<Boolean> check) {
+        return !check.isCompletedExceptionally() && check.join();
+    }
+
+    private void forEachRoleConcurrently(Role[] roles, Consumer<Role> call) {
+        List<CompletableFuture<Void>> calls = Arrays.stream(roles)
+                .map(role -> CompletableFuture.runAsync(() -> call.accept(role), ccCallsExecutor))
+                .collect(toList());
+
+        List<Throwable> failures = new ArrayList<>();
+        calls.forEach(future -> {
+            try {
+                future.join();
+            } catch (CompletionException e) {
+                failures.add(e.getCause());
+            }
+        });
+
+        if (failures.size() == 1 && failures.get(0) instanceof RuntimeException) {
+            throw (RuntimeException) failures.get(0);
+        }
+        if (!failures.isEmpty()) {
+            throw new RoleUpdateException(String.format("%d of %d role changes failed",
+                    failures.size(), roles.length), failures);
+        }
+    }
+
+    private void invalidateOrg(UUID userGuid, UUID orgGuid) {
+        memo.invalidate(ORG_USERS, orgGuid);
+        memo.invalidate(ORG_MANAGERS, orgGuid);
+        roleChangeListeners.forEach(listener -> listener.orgRolesChanged(userGuid, orgGuid));
+    }
+
+    private void invalidateSpace(UUID userGuid, UUID spaceGuid) {
+        memo.invalidate(SPACE_USERS, spaceGuid);
+        memo.invalidate(SPACE_MANAGERS, spaceGuid);
+        roleChangeListeners.forEach(listener -> listener.spaceRolesChanged(userGuid, spaceGuid));
     }
 
     private Collection<User> getUsersWithRoles(UUID guid, Function<UUID, Observable<User>> getUserFunc) {
@@ -268,11 +490,7 @@ public class CfUsersService implements UsersService {
                 .map(user -> user.getGuid())
                 .collect(Collectors.toSet());
 
-        Map<UUID, String> nameMap = uaaClient
-                .findUserNames(userIdList)
-                .stream()
-                .filter(x -> x.getUserName() != null)
-                .collect(Collectors.toMap(UserIdNamePair::getGuid, UserIdNamePair::getUserName));
+        Map<UUID, String> nameMap = userNamesCache.getUserNames(userIdList, uaaClient::findUserNames);
 
 
         return users.stream()
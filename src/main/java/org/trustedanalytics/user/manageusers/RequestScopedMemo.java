@@ -0,0 +1,90 @@
+/**
+ *  Copyright (c) 2015 Intel Corporation 
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.trustedanalytics.user.manageusers;
+
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Remembers results of lookups for the duration of the current HTTP request, so the same
+ * listing is fetched from Cloud Controller only once per request. Outside of a request
+ * (or on threads the request is not bound to) every lookup goes straight to the loader.
+ */
+class RequestScopedMemo {
+
+    private static final AtomicLong INSTANCES = new AtomicLong();
+
+    private final String attributeName =
+            RequestScopedMemo.class.getName() + "." + INSTANCES.incrementAndGet();
+
+    @SuppressWarnings("unchecked")
+    <T> T get(String kind, Object id, Supplier<T> loader) {
+        Map<String, Object> values = currentValues();
+        if (values == null) {
+            return loader.get();
+        }
+
+        String key = key(kind, id);
+        T value = (T) values.get(key);
+        if (value == null) {
+            value = Objects.requireNonNull(loader.get());
+            values.put(key, value);
+        }
+        return value;
+    }
+
+    void invalidate(String kind, Object id) {
+        Map<String, Object> values = currentValues();
+        if (values != null) {
+            values.remove(key(kind, id));
+        }
+    }
+
+    void invalidateAll() {
+        Map<String, Object> values = currentValues();
+        if (values != null) {
+            values.clear();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> currentValues() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null) {
+            return null;
+        }
+
+        synchronized (this) {
+            Map<String, Object> values =
+                    (Map<String, Object>) attributes.getAttribute(attributeName, RequestAttributes.SCOPE_REQUEST);
+            if (values == null) {
+                values = new ConcurrentHashMap<>();
+                attributes.setAttribute(attributeName, values, RequestAttributes.SCOPE_REQUEST);
+            }
+            return values;
+        }
+    }
+
+    private static String key(String kind, Object id) {
+        return kind + ":" + id;
+    }
+}
@@ -0,0 +1,31 @@
+/**
+ *  Copyright (c) 2015 Intel Corporation 
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.trustedanalytics.user.manageusers;
+
+import java.util.UUID;
+
+/**
+ * Notified by {@link CfUsersService} after it changes roles of a user, so anything derived
+ * from the roles can be dropped.
+ */
+public interface RoleChangeListener {
+
+    void orgRolesChanged(UUID userGuid, UUID orgGuid);
+
+    void spaceRolesChanged(UUID userGuid, UUID spaceGuid);
+
+    void userDeleted(UUID userGuid);
+}
@@ -0,0 +1,30 @@
+/**
+ *  Copyright (c) 2015 Intel Corporation 
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.trustedanalytics.user.manageusers;
+
+import java.util.List;
+
+/**
+ * Thrown when several role changes sent to Cloud Controller at once fail. Each failure is
+ * attached as a suppressed exception.
+ */
+public class RoleUpdateException extends RuntimeException {
+
+    public RoleUpdateException(String message, List<Throwable> failures) {
+        super(message, failures.get(0));
+        failures.stream().skip(1).forEach(this::addSuppressed);
+    }
+}
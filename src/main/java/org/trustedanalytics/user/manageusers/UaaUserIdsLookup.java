@@ -0,0 +1,70 @@
+/**
+ *  Copyright (c) 2015 Intel Corporation 
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.trustedanalytics.user.manageusers;
+
+import static java.util.stream.Collectors.joining;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.springframework.web.client.RestOperations;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Finds ids of many UAA users with a single query filtered by their names, instead of a call
+ * per name. Users which do not exist are missing from the result.
+ */
+public class UaaUserIdsLookup {
+
+    private static final String USERS_BY_NAMES_PATH = "/Users?attributes=id,userName&count={count}&filter={filter}";
+
+    private final RestOperations restOperations;
+    private final String uaaBaseUrl;
+
+    public UaaUserIdsLookup(RestOperations restOperations, String uaaBaseUrl) {
+        this.restOperations = restOperations;
+        this.uaaBaseUrl = uaaBaseUrl;
+    }
+
+    public Map<String, UUID> findUserIds(Collection<String> usernames) {
+        if (usernames.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        String filter = usernames.stream()
+                .map(username -> "userName eq \"" + username.replace("\\", "\\\\").replace("\"", "\\\"") + "\"")
+                .collect(joining(" or "));
+        JsonNode page = restOperations.getForObject(uaaBaseUrl + USERS_BY_NAMES_PATH, JsonNode.class,
+                usernames.size(), filter);
+
+        // user names are case insensitive in UAA, results are reported under requested ones
+        Map<String, String> requested = new HashMap<>();
+        usernames.forEach(username -> requested.put(username.toLowerCase(), username));
+        Map<String, UUID> ids = new HashMap<>();
+        if (page == null) {
+            return ids;
+        }
+        for (JsonNode user : page.path("resources")) {
+            String username = requested.get(user.path("userName").asText().toLowerCase());
+            if (username != null) {
+                ids.put(username, UUID.fromString(user.path("id").asText()));
+            }
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ *  Copyright (c) 2015 Intel Corporation 
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.trustedanalytics.user.manageusers;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.trustedanalytics.cloud.uaa.UserIdNamePair;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Process-wide cache of user GUID to username mapping. Usernames practically never change,
+ * so only GUIDs that are not cached yet (or expired) are resolved in UAA.
+ */
+public class UserNamesCache implements PublicMetrics {
+
+    private final Cache<UUID, String> userNames;
+
+    public UserNamesCache(long maxSize, long ttlSeconds) {
+        this.userNames = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+    }
+
+    public Map<UUID, String> getUserNames(Collection<UUID> guids,
+                                          Function<Collection<UUID>, Collection<UserIdNamePair>> loader) {
+        Map<UUID, String> result = new HashMap<>(userNames.getAllPresent(guids));
+        Set<UUID> missing = guids.stream()
+                .filter(guid -> !result.containsKey(guid))
+                .collect(Collectors.toSet());
+
+        if (!missing.isEmpty()) {
+            loader.apply(missing)
+                    .stream()
+                    .filter(pair -> pair.getUserName() != null)
+                    .forEach(pair -> {
+                        userNames.put(pair.getGuid(), pair.getUserName());
+                        result.put(pair.getGuid(), pair.getUserName());
+                    });
+        }
+        return result;
+    }
+
+    public void invalidate(UUID guid) {
+        userNames.invalidate(guid);
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        CacheStats stats = userNames.stats();
+        return Arrays.asList(
+                new Metric<Long>("uaa.usernames.cache.hits", stats.hitCount()),
+                new Metric<Long>("uaa.usernames.cache.misses", stats.missCount()),
+                new Metric<Long>("uaa.usernames.cache.size", userNames.size()));
+    }
+}
@@ -0,0 +1,62 @@
+/**
+ *  Copyright (c) 2015 Intel Corporation 
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.trustedanalytics.user.manageusers;
+
+import static java.util.stream.Collectors.toList;
+
+import org.trustedanalytics.cloud.cc.api.manageusers.Role;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Reads bulk user requests from CSV with one user per line: email followed by comma separated
+ * roles. Lines with unknown roles are reported as invalid, the rest of them is still read.
+ */
+public class UserRequestsCsvReader {
+
+    private final ObjectMapper objectMapper;
+
+    public UserRequestsCsvReader(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    public List<UserRequest> read(String csv, Consumer<BulkUserResult> malformed) {
+        List<UserRequest> userRequests = new ArrayList<>();
+        for (String line : csv.split("\\r?\\n")) {
+            if (StringUtils.isBlank(line)) {
+                continue;
+            }
+            String[] columns = line.split(",");
+            UserRequest userRequest = new UserRequest(columns[0].trim());
+            try {
+                userRequest.setRoles(Arrays.stream(columns, 1, columns.length)
+                    .map(role -> objectMapper.convertValue(role.trim(), Role.class))
+                    .collect(toList()));
+                userRequests.add(userRequest);
+            } catch (IllegalArgumentException e) {
+                malformed.accept(new BulkUserResult(userRequest.getUsername(), BulkUserResult.State.INVALID,
+                    "Unknown role in: " + line));
+            }
+        }
+        return userRequests;
+    }
+}
@@ -25,13 +25,17 @@ import org.trustedanalytics.cloud.auth.AuthTokenRetriever;
 import org.trustedanalytics.cloud.auth.HeaderAddingHttpInterceptor;
 import org.trustedanalytics.cloud.cc.FeignClient;
 import org.trustedanalytics.cloud.cc.api.CcOperations;
-import org.trustedanalytics.cloud.cc.api.customizations.OAuth2RequestInterceptor;
 import org.trustedanalytics.cloud.uaa.UaaClient;
 import org.trustedanalytics.cloud.uaa.UaaOperations;
+import org.trustedanalytics.user.common.ApacheHttpFeignClient;
+import org.trustedanalytics.user.common.ContextPropagatingExecutor;
+import org.trustedanalytics.user.common.HttpConnectionPool;
 import org.trustedanalytics.user.common.OAuth2PriviligedInterceptor;
+import org.trustedanalytics.user.current.PermissionsCache;
 import org.trustedanalytics.user.invite.EmailOrgUserInvitationService;
 import org.trustedanalytics.user.invite.InvitationsService;
 import org.trustedanalytics.user.invite.MessageService;
+import org.trustedanalytics.user.invite.OrgNameLookup;
 import org.trustedanalytics.user.invite.OrgUserInvitationService;
 import org.springframework.web.client.RestTemplate;
 
@@ -41,6 +45,7 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Scope;
 import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
@@ -48,6 +53,8 @@ import org.springframework.web.client.RestOperations;
 import org.thymeleaf.TemplateEngine;
 import org.trustedanalytics.user.invite.access.AccessInvitationsService;
 
+import java.util.List;
+
 @Profile("cloud")
 @Configuration
 public class UsersConfig {
@@ -57,12 +64,42 @@ public class UsersConfig {
     @Value("${oauth.resource}")
     private String apiBaseUrl;
 
+    @Value("${cache.usernames.max_size}")
+    private long userNamesCacheSize;
+
+    @Value("${cache.usernames.ttl}")
+    private long userNamesCacheTtl;
+
+    @Value("${cache.authorization.max_size}")
+    private long decisionsCacheSize;
+
+    @Value("${cache.authorization.ttl}")
+    private long decisionsCacheTtl;
+
+    @Value("${cache.permissions.max_size}")
+    private long permissionsCacheSize;
+
+    @Value("${cache.permissions.ttl}")
+    private long permissionsCacheTtl;
+
+    @Value("${http.max_parallel_calls}")
+    private int maxParallelCalls;
+
     @Autowired
     private AuthTokenRetriever tokenRetriever;
 
+    @Autowired
+    private HttpConnectionPool httpConnectionPool;
+
+    @Bean
+    protected ApacheHttpFeignClient feignHttpClient() {
+        return new ApacheHttpFeignClient(httpConnectionPool.getHttpClient());
+    }
+
     @Bean
     protected OAuth2PriviligedInterceptor oauth2PrivilegedInterceptor(OAuth2ProtectedResourceDetails clientCredentials) {
-        return new OAuth2PriviligedInterceptor(clientCredentials);
+        return new OAuth2PriviligedInterceptor(clientCredentials,
+                new HttpComponentsClientHttpRequestFactory(httpConnectionPool.getHttpClient()));
     }
 
     @Bean
@@ -70,20 +107,36 @@ public class UsersConfig {
 
         return new FeignClient(apiBaseUrl,
                 builder -> builder
+                        .client(feignHttpClient())
                         .requestInterceptor(oauth2PrivilegedInterceptor));
     }
 
+    @Bean
+    protected OrgNameLookup orgNameLookup(RestOperations clientRestTemplate) {
+        return new OrgNameLookup(clientRestTemplate, apiBaseUrl);
+    }
+
     @Bean
     protected UaaOperations uaaPrivilegedClient(RestOperations clientRestTemplate) {
         return new UaaClient(clientRestTemplate, uaaBaseUrl);
     }
 
     @Bean
-    @Scope(value = SCOPE_REQUEST, proxyMode = TARGET_CLASS)
+    protected UaaUserIdsLookup uaaUserIdsLookup(RestOperations clientRestTemplate) {
+        return new UaaUserIdsLookup(clientRestTemplate, uaaBaseUrl);
+    }
+
+    /**
+     * Built once, the token of the user is added to every call when it is made. Calls made
+     * concurrently on behalf of a request see the user through {@link ContextPropagatingExecutor}.
+     */
+    @Bean
     protected CcOperations ccClient() {
         return new FeignClient(apiBaseUrl,
                 builder -> builder
-                        .requestInterceptor(new OAuth2RequestInterceptor(getAccessToken())));
+                        .client(feignHttpClient())
+                        .requestInterceptor(template ->
+                                template.header("Authorization", "bearer " + getAccessToken())));
     }
 
     @Bean
@@ -114,23 +167,56 @@ public class UsersConfig {
         return tokenRetriever.getAuthToken(authentication);
     }
 
+    @Bean
+    protected ContextPropagatingExecutor ccCallsExecutor() {
+        return new ContextPropagatingExecutor("cc-calls", maxParallelCalls);
+    }
+
+    @Bean
+    protected AuthorizationDecisionCache authorizationDecisionCache() {
+        return new AuthorizationDecisionCache(decisionsCacheSize, decisionsCacheTtl);
+    }
+
+    @Bean
+    protected PermissionsCache permissionsCache() {
+        return new PermissionsCache(permissionsCacheSize, permissionsCacheTtl);
+    }
+
+    @Bean
+    protected UserNamesCache userNamesCache() {
+        return new UserNamesCache(userNamesCacheSize, userNamesCacheTtl);
+    }
+
     @Bean
     protected UsersService usersService(CcOperations ccClient,
                                         UaaOperations uaaClient,
                                         InvitationsService invitationsService,
-                                        AccessInvitationsService accessInvitationsService) {
-        return new CfUsersService(ccClient, uaaClient, invitationsService, accessInvitationsService);
+                                        AccessInvitationsService accessInvitationsService,
+                                        UserNamesCache userNamesCache,
+                                        List<RoleChangeListener> roleChangeListeners,
+                                        ContextPropagatingExecutor ccCallsExecutor,
+                                        UaaUserIdsLookup uaaUserIdsLookup) {
+        return new CfUsersService(ccClient, uaaClient, invitationsService, accessInvitationsService,
+                userNamesCache, roleChangeListeners, ccCallsExecutor, uaaUserIdsLookup::findUserIds);
     }
 
     @Bean
     protected UsersService priviledgedUsersService(CcOperations ccPrivilegedClient,
                                                    UaaOperations uaaPrivilegedClient,
                                                    InvitationsService invitationsService,
-                                                   AccessInvitationsService accessInvitationsService) {
+                                                   AccessInvitationsService accessInvitationsService,
+                                                   UserNamesCache userNamesCache,
+                                                   List<RoleChangeListener> roleChangeListeners,
+                                                   ContextPropagatingExecutor ccCallsExecutor,
+                                                   UaaUserIdsLookup uaaUserIdsLookup) {
         return new CfUsersService(ccPrivilegedClient,
                 uaaPrivilegedClient,
                 invitationsService,
-                accessInvitationsService);
+                accessInvitationsService,
+                userNamesCache,
+                roleChangeListeners,
+                ccCallsExecutor,
+                uaaUserIdsLookup::findUserIds);
     }
 
 
@@ -29,8 +29,12 @@ import org.trustedanalytics.cloud.cc.api.manageusers.Role;
 import org.trustedanalytics.user.common.BlacklistEmailValidator;
 import org.trustedanalytics.user.common.FormatUserRolesValidator;
 import org.trustedanalytics.user.common.StringToUuidConverter;
+import org.trustedanalytics.user.common.WrongUserRolesException;
 import org.trustedanalytics.user.current.UserDetailsFinder;
+import org.trustedanalytics.user.invite.WrongEmailAddressException;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -39,32 +43,52 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.bind.annotation.RequestParam;
 
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 @RestController
 public class UsersController {
 
     public static final String ORG_USERS_URL = "/rest/orgs/{org}/users";
+    public static final String ORG_USERS_BULK_URL = ORG_USERS_URL + "/bulk";
     public static final String SPACE_USERS_URL = "/rest/spaces/{space}/users";
+
+    private static final String NDJSON_VALUE = "application/x-ndjson";
+    private static final String CSV_VALUE = "text/csv";
     
     private final UsersService usersService;
     private final UsersService priviledgedUsersService;
     private final UserDetailsFinder detailsFinder;
     private final BlacklistEmailValidator emailValidator;
     private final FormatUserRolesValidator formatRolesValidator;
+    private final AuthorizationDecisionCache decisionCache;
     private final StringToUuidConverter stringToUuidConverter = new StringToUuidConverter();
+    private final ObjectMapper objectMapper;
+    private final UserRequestsCsvReader csvReader;
 
     @Autowired
     public UsersController(UsersService usersService, UsersService priviledgedUsersService,
-        UserDetailsFinder detailsFinder, BlacklistEmailValidator emailValidator, FormatUserRolesValidator formatRolesValidator) {
+        UserDetailsFinder detailsFinder, BlacklistEmailValidator emailValidator, FormatUserRolesValidator formatRolesValidator,
+        AuthorizationDecisionCache decisionCache, ObjectMapper objectMapper) {
         this.usersService = usersService;
         this.priviledgedUsersService = priviledgedUsersService;
         this.detailsFinder = detailsFinder;
         this.emailValidator = emailValidator;
         this.formatRolesValidator = formatRolesValidator;
+        this.decisionCache = decisionCache;
+        this.objectMapper = objectMapper;
+        this.csvReader = new UserRequestsCsvReader(objectMapper);
     }
 
     enum AuthorizationScope {
@@ -75,13 +99,11 @@ public class UsersController {
     private UsersService determinePriviledgeLevel(Authentication auth, AuthorizationScope scope,
         UUID scopeId) {
         UUID userId = detailsFinder.findUserId(auth);
-        if(scope == AuthorizationScope.ORG && usersService.isOrgManager(userId, scopeId)) {
-            return priviledgedUsersService;
-        }
-        if(scope == AuthorizationScope.SPACE && usersService.isSpaceManager(userId, scopeId)) {
-            return priviledgedUsersService;
-        }
-        return usersService;
+        boolean isManager = decisionCache.isManager(userId, scope, scopeId,
+            () -> scope == AuthorizationScope.ORG
+                ? usersService.isOrgManager(userId, scopeId)
+                : usersService.isSpaceManager(userId, scopeId));
+        return isManager ? priviledgedUsersService : usersService;
     }
 
     @ApiOperation(
@@ -143,6 +165,82 @@ public class UsersController {
             .addOrgUser(userRequest, orgUuid, currentUser).orElse(null);
     }
 
+    @ApiOperation(
+            value = "Adds many users to organization at once, sending invitations to the new ones.",
+            notes = "Privilege level: Consumer of this endpoint must be a member of specified organization " +
+                    "with OrgManager role, based on valid access token. Accepts JSON array of users or CSV with " +
+                    "one user per line: email followed by comma separated roles. Result of every user is " +
+                    "streamed back as a separate JSON line as soon as it is known."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "OK", response = BulkUserResult.class, responseContainer = "List"),
+            @ApiResponse(code = 400, message = "Request was malformed. eg. 'org' is not a valid UUID or organization with" +
+                    "ID 'org' doesn't exist"),
+            @ApiResponse(code = 500, message = "Internal server error, e.g. error connecting to CloudController")
+    })
+    @RequestMapping(value = ORG_USERS_BULK_URL, method = POST,
+            produces = NDJSON_VALUE, consumes = APPLICATION_JSON_VALUE)
+    public void createOrgUsers(@RequestBody List<UserRequest> userRequests, @PathVariable String org,
+                               @ApiParam(hidden = true) Authentication auth,
+                               @ApiParam(hidden = true) HttpServletResponse response) throws IOException {
+        addOrgUsers(userRequests, Collections.emptyList(), org, auth, response);
+    }
+
+    @RequestMapping(value = ORG_USERS_BULK_URL, method = POST,
+            produces = NDJSON_VALUE, consumes = CSV_VALUE)
+    public void createOrgUsersFromCsv(@RequestBody String csv, @PathVariable String org,
+                                      @ApiParam(hidden = true) Authentication auth,
+                                      @ApiParam(hidden = true) HttpServletResponse response) throws IOException {
+        List<BulkUserResult> malformed = new ArrayList<>();
+        List<UserRequest> userRequests = csvReader.read(csv, malformed::add);
+        addOrgUsers(userRequests, malformed, org, auth, response);
+    }
+
+    /**
+     * Rejected requests are reported first, then duplicates (compared case insensitive) and
+     * invalid ones. The rest is passed to users service, which reports their results.
+     */
+    private void addOrgUsers(List<UserRequest> userRequests, List<BulkUserResult> rejected, String org,
+                             Authentication auth, HttpServletResponse response) throws IOException {
+        UUID orgUuid = stringToUuidConverter.convert(org);
+        String currentUser = detailsFinder.findUserName(auth);
+        UsersService service = determinePriviledgeLevel(auth, AuthorizationScope.ORG, orgUuid);
+
+        response.setContentType(NDJSON_VALUE);
+        PrintWriter writer = response.getWriter();
+        Consumer<BulkUserResult> results = result -> {
+            synchronized (writer) {
+                try {
+                    writer.println(objectMapper.writeValueAsString(result));
+                } catch (IOException e) {
+                    throw new IllegalStateException("Unable to write result of " + result.getUsername(), e);
+                }
+                writer.flush();
+            }
+        };
+        rejected.forEach(results);
+
+        Set<String> seen = new HashSet<>();
+        List<UserRequest> accepted = new ArrayList<>();
+        for (UserRequest userRequest : userRequests) {
+            String username = StringUtils.trimToEmpty(userRequest.getUsername());
+            userRequest.setUsername(username);
+            if (!seen.add(username.toLowerCase())) {
+                results.accept(new BulkUserResult(username, BulkUserResult.State.DUPLICATE));
+                continue;
+            }
+            try {
+                emailValidator.validate(username);
+                formatRolesValidator.validateOrgRoles(userRequest.getRoles());
+                accepted.add(userRequest);
+            } catch (WrongEmailAddressException | WrongUserRolesException e) {
+                results.accept(new BulkUserResult(username, BulkUserResult.State.INVALID, e.getMessage()));
+            }
+        }
+
+        service.addOrgUsers(accepted, orgUuid, currentUser, results);
+    }
+
     @ApiOperation(
             value = "Sends invitations message for new users or returns user for existing one in space.",
             notes = "Privilege level: Consumer of this endpoint must be a member of specified space " +
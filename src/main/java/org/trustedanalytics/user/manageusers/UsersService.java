@@ -23,6 +23,7 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 public interface UsersService {
     Collection<User> getOrgUsers(UUID orgGuid);
@@ -32,6 +33,13 @@ public interface UsersService {
     Optional<User> addOrgUser(UserRequest userRequest, UUID org, String currentUser);
     
     Optional<User> addSpaceUser(UserRequest userRequest, UUID spaceGuid, String currentUser);
+
+    /**
+     * Adds existing users to the organization and invites the new ones. Result of every request
+     * is passed to the consumer as soon as it is known.
+     */
+    void addOrgUsers(List<UserRequest> userRequests, UUID org, String currentUser,
+                     Consumer<BulkUserResult> results);
     
     void deleteUser(UUID guid);
     
@@ -15,32 +15,43 @@
  */
 package org.trustedanalytics.user.orgs;
 
+import static java.util.Comparator.comparing;
+
 import org.trustedanalytics.cloud.cc.api.CcOrg;
 import org.trustedanalytics.cloud.cc.api.CcSpace;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.LinkedList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.Set;
 import java.util.UUID;
 
 public class FormatTranslator {
     private FormatTranslator() {
     }
 
+    /**
+     * Builds organizations tree sorted by organization GUID. Every input collection is walked
+     * once and every organization is looked up once per space, so the cost stays linear for
+     * accounts that see all organizations of the platform.
+     */
     public static Collection<Organization> getOrganizationsWithSpaces(Collection<CcOrg> orgs, Collection<CcOrg> mngOrgs,
                                                                       Collection<CcSpace> spacesList) {
 
-        Map<UUID, Organization> outputOrgs = new TreeMap<>();
-        for (CcOrg cfOrg : orgs) {
-            outputOrgs.put(cfOrg.getGuid(), new Organization(cfOrg) );
+        Set<UUID> managedOrgGuids = new HashSet<>(capacityFor(mngOrgs.size()));
+        for (CcOrg mngOrg : mngOrgs) {
+            managedOrgGuids.add(mngOrg.getGuid());
         }
 
-        mngOrgs.forEach(mngorg -> {
-            if (outputOrgs.containsKey(mngorg.getGuid())){
-                outputOrgs.get(mngorg.getGuid()).setManager(true);
-            }
-        });
+        Map<UUID, Organization> outputOrgs = new HashMap<>(capacityFor(orgs.size()));
+        for (CcOrg cfOrg : orgs) {
+            Organization org = new Organization(cfOrg);
+            org.setManager(managedOrgGuids.contains(cfOrg.getGuid()));
+            outputOrgs.put(cfOrg.getGuid(), org);
+        }
 
         for (CcSpace cfSpace : spacesList) {
             Organization org = outputOrgs.get(cfSpace.getOrgGuid());
@@ -49,8 +60,12 @@ public class FormatTranslator {
             }
         }
 
-        return new LinkedList<>(outputOrgs.values());
+        List<Organization> result = new ArrayList<>(outputOrgs.values());
+        result.sort(comparing(Organization::getGuid));
+        return result;
     }
 
-
+    private static int capacityFor(int size) {
+        return (int) (size / 0.75f) + 1;
+    }
 }
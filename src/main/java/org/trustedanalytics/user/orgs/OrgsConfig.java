@@ -0,0 +1,38 @@
+/**
+ *  Copyright (c) 2015 Intel Corporation 
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.trustedanalytics.user.orgs;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class OrgsConfig {
+
+    @Value("${cache.topology.max_size}")
+    private long topologyCacheSize;
+
+    @Value("${cache.topology.ttl}")
+    private long topologyCacheTtl;
+
+    @Value("${cache.topology.max_stale}")
+    private long topologyCacheMaxStale;
+
+    @Bean
+    protected TopologySnapshots topologySnapshots() {
+        return new TopologySnapshots(topologyCacheSize, topologyCacheTtl, topologyCacheMaxStale);
+    }
+}
@@ -32,14 +32,23 @@ import org.trustedanalytics.user.current.UserDetailsFinder;
 import org.trustedanalytics.user.manageusers.OrgNameRequest;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.metrics.GaugeService;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+
+import rx.Observable;
+import rx.Scheduler;
+import rx.schedulers.Schedulers;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 public class OrgsController {
@@ -48,11 +57,21 @@ public class OrgsController {
     private final CcOperationsOrgsSpaces ccClient;
 
     private final UserDetailsFinder detailsFinder;
+
+    private final Scheduler ccCallsScheduler;
+
+    private final GaugeService gaugeService;
+
+    private final TopologySnapshots topologySnapshots;
     
     @Autowired
-    public OrgsController(CcOperationsOrgsSpaces ccClient, UserDetailsFinder detailsFinder) {
+    public OrgsController(CcOperationsOrgsSpaces ccClient, UserDetailsFinder detailsFinder,
+        Executor ccCallsExecutor, GaugeService gaugeService, TopologySnapshots topologySnapshots) {
         this.ccClient = ccClient;
         this.detailsFinder = detailsFinder;
+        this.ccCallsScheduler = Schedulers.from(ccCallsExecutor);
+        this.gaugeService = gaugeService;
+        this.topologySnapshots = topologySnapshots;
     }
 
     @ApiOperation(
@@ -65,12 +84,39 @@ public class OrgsController {
     })
     @RequestMapping(value = GENERAL_ORGS_URL, method = GET,
         produces = APPLICATION_JSON_VALUE)
-    public Collection<Organization> getOrgs(@ApiParam(hidden = true) Authentication auth) {
-        Collection<CcOrg> orgs = ccClient.getOrgs().toList().toBlocking().single();
-        Collection<CcSpace> spaces = ccClient.getSpaces().toList().toBlocking().single();
-        Collection<CcOrg> managedOrgs =
-            ccClient.getManagedOrganizations(detailsFinder.findUserId(auth));
-        return FormatTranslator.getOrganizationsWithSpaces(orgs, managedOrgs, spaces);
+    public Collection<Organization> getOrgs(@ApiParam(hidden = true) Authentication auth,
+        @ApiParam(hidden = true) WebRequest request) {
+        UUID userId = detailsFinder.findUserId(auth);
+        TopologySnapshots.Snapshot<Collection<Organization>> snapshot =
+            topologySnapshots.get(TopologySnapshots.key("orgs", userId), () -> loadOrgs(ccClient, userId));
+        return request.checkNotModified(snapshot.getEtag()) ? null : snapshot.getValue();
+    }
+
+    private Collection<Organization> loadOrgs(CcOperationsOrgsSpaces client, UUID userId) {
+        Observable<List<CcOrg>> orgs =
+            timed("orgs", client.getOrgs().toList());
+        Observable<List<CcSpace>> spaces =
+            timed("spaces", client.getSpaces().toList());
+        Observable<Collection<CcOrg>> managedOrgs =
+            timed("managed_orgs", Observable.defer(() -> Observable.just(client.getManagedOrganizations(userId))));
+
+        return Observable.zip(orgs, spaces, managedOrgs,
+            (ccOrgs, ccSpaces, ccManagedOrgs) ->
+                FormatTranslator.getOrganizationsWithSpaces(ccOrgs, ccManagedOrgs, ccSpaces))
+            .toBlocking()
+            .single();
+    }
+
+    /**
+     * Subscribes to the call on CC calls pool, so calls zipped together run concurrently, and
+     * records its duration as timer.orgs.{name} gauge.
+     */
+    private <T> Observable<T> timed(String name, Observable<T> call) {
+        return Observable.defer(() -> {
+            long start = System.nanoTime();
+            return call.doOnTerminate(() -> gaugeService.submit("timer.orgs." + name,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+        }).subscribeOn(ccCallsScheduler);
     }
 
     @ApiOperation(
@@ -86,6 +132,7 @@ public class OrgsController {
         + "/{org}/name", method = PUT, consumes = APPLICATION_JSON_VALUE)
     public void renameOrg(@RequestBody OrgNameRequest request, @PathVariable String org) {
         ccClient.renameOrg(UUID.fromString(org), request.getName());
+        topologySnapshots.invalidateAll();
     }
 
     @ApiOperation(
@@ -100,6 +147,7 @@ public class OrgsController {
     @RequestMapping(value = GENERAL_ORGS_URL + "/{org}", method = DELETE)
     public void deleteOrg(@PathVariable String org) {
         ccClient.deleteOrg(UUID.fromString(org));
+        topologySnapshots.invalidateAll();
     }
 
     @ApiOperation(
@@ -112,6 +160,8 @@ public class OrgsController {
     })
     @RequestMapping(value = GENERAL_ORGS_URL, method = POST, consumes = APPLICATION_JSON_VALUE)
     public UUID createOrg(@RequestBody OrgNameRequest request) {
-        return ccClient.createOrganization(request.getName());
+        UUID orgGuid = ccClient.createOrganization(request.getName());
+        topologySnapshots.invalidateAll();
+        return orgGuid;
     }
 }
@@ -25,15 +25,19 @@ import java.util.UUID;
 
 
 import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
 import org.trustedanalytics.cloud.cc.api.CcOperationsOrgsSpaces;
 import org.trustedanalytics.cloud.cc.api.CcSpace;
+import org.trustedanalytics.user.current.UserDetailsFinder;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
 @RestController
 public class SpacesController {
@@ -43,9 +47,16 @@ public class SpacesController {
 
     private final CcOperationsOrgsSpaces ccClient;
 
+    private final UserDetailsFinder detailsFinder;
+
+    private final TopologySnapshots topologySnapshots;
+
     @Autowired
-    public SpacesController(CcOperationsOrgsSpaces ccClient) {
+    public SpacesController(CcOperationsOrgsSpaces ccClient, UserDetailsFinder detailsFinder,
+        TopologySnapshots topologySnapshots) {
         this.ccClient = ccClient;
+        this.detailsFinder = detailsFinder;
+        this.topologySnapshots = topologySnapshots;
     }
 
     @ApiOperation(
@@ -56,8 +67,12 @@ public class SpacesController {
             @ApiResponse(code = 500, message = "Internal server error, e.g. error connecting to CloudController")
     })
     @RequestMapping(value = GET_ALL_SPACES_URL, method = GET, produces = APPLICATION_JSON_VALUE)
-    public Collection<CcSpace> getSpaces() {
-        return ccClient.getSpaces().toList().toBlocking().single();
+    public Collection<CcSpace> getSpaces(@ApiParam(hidden = true) Authentication auth,
+        @ApiParam(hidden = true) WebRequest request) {
+        TopologySnapshots.Snapshot<Collection<CcSpace>> snapshot =
+            topologySnapshots.get(TopologySnapshots.key("spaces", detailsFinder.findUserId(auth)),
+                () -> ccClient.getSpaces().toList().toBlocking().single());
+        return request.checkNotModified(snapshot.getEtag()) ? null : snapshot.getValue();
     }
 
     @ApiOperation(
@@ -68,8 +83,13 @@ public class SpacesController {
             @ApiResponse(code = 500, message = "Internal server error, e.g. error connecting to CloudController")
     })
     @RequestMapping(value = GET_SPACES_OF_ORG_URL, method = GET, produces = APPLICATION_JSON_VALUE)
-    public Collection<CcSpace> getSpaces(@PathVariable String org) {
-        return ccClient.getSpaces(UUID.fromString(org)).toList().toBlocking().single();
+    public Collection<CcSpace> getSpaces(@PathVariable String org, @ApiParam(hidden = true) Authentication auth,
+        @ApiParam(hidden = true) WebRequest request) {
+        UUID orgGuid = UUID.fromString(org);
+        TopologySnapshots.Snapshot<Collection<CcSpace>> snapshot =
+            topologySnapshots.get(TopologySnapshots.key("org-spaces", detailsFinder.findUserId(auth), orgGuid),
+                () -> ccClient.getSpaces(orgGuid).toList().toBlocking().single());
+        return request.checkNotModified(snapshot.getEtag()) ? null : snapshot.getValue();
     }
 
     @ApiOperation(
@@ -83,7 +103,9 @@ public class SpacesController {
     })
     @RequestMapping(value = GET_ALL_SPACES_URL, method = POST, consumes = APPLICATION_JSON_VALUE)
     public UUID createSpace(@RequestBody NewSpaceRequest request) {
-        return ccClient.createSpace(request.getOrgGuid(), request.getName());
+        UUID spaceGuid = ccClient.createSpace(request.getOrgGuid(), request.getName());
+        topologySnapshots.invalidateAll();
+        return spaceGuid;
     }
 
     @ApiOperation(
@@ -98,5 +120,6 @@ public class SpacesController {
     @RequestMapping(value = GET_ALL_SPACES_URL+"/{space}", method = DELETE)
     public void deleteSpace(@PathVariable String space) {
         ccClient.deleteSpace(UUID.fromString(space));
+        topologySnapshots.invalidateAll();
     }
 }
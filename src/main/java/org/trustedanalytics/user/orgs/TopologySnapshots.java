@@ -0,0 +1,260 @@
+/**
+ *  Copyright (c) 2015 Intel Corporation 
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.trustedanalytics.user.orgs;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.trustedanalytics.user.manageusers.RoleChangeListener;
+
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Snapshots of org/space listings as seen by particular users. Snapshot younger than ttl is
+ * served as is; older one is still served (up to max stale age) while a fresh one is loaded
+ * in background. Every snapshot carries a strong ETag computed from its JSON form, so
+ * polling clients can be answered with 304 Not Modified. Snapshots of a user are dropped as
+ * soon as roles of the user are changed.
+ */
+public class TopologySnapshots implements RoleChangeListener, PublicMetrics, DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TopologySnapshots.class);
+
+    private final Cache<SnapshotKey, Snapshot<?>> snapshots;
+    private final long ttlNanos;
+    private final Ticker ticker;
+    private final Set<SnapshotKey> refreshing = ConcurrentHashMap.newKeySet();
+    private final ExecutorService refresher;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public TopologySnapshots(long maxSize, long ttlSeconds, long maxStaleSeconds) {
+        this(maxSize, ttlSeconds, maxStaleSeconds, Ticker.systemTicker());
+    }
+
+    public TopologySnapshots(long maxSize, long ttlSeconds, long maxStaleSeconds, Ticker ticker) {
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        this.ticker = ticker;
+        this.snapshots = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(maxStaleSeconds, TimeUnit.SECONDS)
+                .ticker(ticker)
+                .build();
+        this.refresher = Executors.newFixedThreadPool(2,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("topology-refresher-%d").build());
+    }
+
+    /**
+     * Key of a listing of given kind, as seen by the user, narrowed by optional parameters.
+     */
+    public static SnapshotKey key(String kind, UUID userGuid, Object... params) {
+        return new SnapshotKey(kind, userGuid, Arrays.asList(params));
+    }
+
+    /**
+     * Key is built with {@link #key}.
+     * <p>
+     * Loader may be called on a background thread after the request is completed, with
+     * security context of the request which triggered the refresh. It must not use request
+     * scoped beans.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Snapshot<T> get(SnapshotKey key, Supplier<T> loader) {
+        Snapshot<T> snapshot = (Snapshot<T>) snapshots.getIfPresent(key);
+        if (snapshot == null) {
+            misses.incrementAndGet();
+            long loadGeneration = generation.get();
+            snapshot = load(loader);
+            if (generation.get() == loadGeneration) {
+                snapshots.put(key, snapshot);
+            }
+            return snapshot;
+        }
+
+        if (ticker.read() - snapshot.loadedAt < ttlNanos) {
+            hits.incrementAndGet();
+        } else {
+            staleHits.incrementAndGet();
+            refreshInBackground(key, loader);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Topology changes are rare and may affect many users, so all snapshots are dropped.
+     */
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        snapshots.invalidateAll();
+    }
+
+    public void invalidateUser(UUID userGuid) {
+        generation.incrementAndGet();
+        snapshots.asMap().keySet().removeIf(key -> key.userGuid.equals(userGuid));
+    }
+
+    @Override
+    public void orgRolesChanged(UUID userGuid, UUID orgGuid) {
+        invalidateUser(userGuid);
+    }
+
+    @Override
+    public void spaceRolesChanged(UUID userGuid, UUID spaceGuid) {
+        invalidateUser(userGuid);
+    }
+
+    @Override
+    public void userDeleted(UUID userGuid) {
+        invalidateUser(userGuid);
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        return Arrays.asList(
+                new Metric<Long>("topology.snapshots.hits", hits.get()),
+                new Metric<Long>("topology.snapshots.stale_hits", staleHits.get()),
+                new Metric<Long>("topology.snapshots.misses", misses.get()),
+                new Metric<Long>("topology.snapshots.size", snapshots.size()));
+    }
+
+    @Override
+    public void destroy() {
+        refresher.shutdownNow();
+    }
+
+    private <T> void refreshInBackground(SnapshotKey key, Supplier<T> loader) {
+        if (!refreshing.add(key)) {
+            return;
+        }
+        long loadGeneration = generation.get();
+        // clients add token of the user from security context to their calls
+        SecurityContext securityContext = SecurityContextHolder.getContext();
+        try {
+            refresher.execute(() -> {
+                SecurityContextHolder.setContext(securityContext);
+                try {
+                    Snapshot<T> snapshot = load(loader);
+                    if (generation.get() == loadGeneration) {
+                        snapshots.put(key, snapshot);
+                    }
+                } catch (RuntimeException e) {
+                    LOGGER.warn("Unable to refresh topology snapshot " + key, e);
+                } finally {
+                    SecurityContextHolder.clearContext();
+                    refreshing.remove(key);
+                }
+            });
+        } catch (RuntimeException e) {
+            refreshing.remove(key);
+            throw e;
+        }
+    }
+
+    private <T> Snapshot<T> load(Supplier<T> loader) {
+        T value = loader.get();
+        try {
+            String etag = "\"" + Hashing.sha256().hashBytes(objectMapper.writeValueAsBytes(value)) + "\"";
+            return new Snapshot<>(value, etag, ticker.read());
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static final class SnapshotKey {
+        private final String kind;
+        private final UUID userGuid;
+        private final List<Object> params;
+
+        private SnapshotKey(String kind, UUID userGuid, List<Object> params) {
+            this.kind = kind;
+            this.userGuid = userGuid;
+            this.params = params;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof SnapshotKey)) {
+                return false;
+            }
+            SnapshotKey other = (SnapshotKey) o;
+            return kind.equals(other.kind) && userGuid.equals(other.userGuid) && params.equals(other.params);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(kind, userGuid, params);
+        }
+
+        @Override
+        public String toString() {
+            return Stream.concat(Stream.<Object>of(kind, userGuid), params.stream())
+                    .map(String::valueOf)
+                    .collect(Collectors.joining(":"));
+        }
+    }
+
+    public static final class Snapshot<T> {
+        private final T value;
+        private final String etag;
+        private final long loadedAt;
+
+        private Snapshot(T value, String etag, long loadedAt) {
+            this.value = value;
+            this.etag = etag;
+            this.loadedAt = loadedAt;
+        }
+
+        public T getValue() {
+            return value;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+    }
+}
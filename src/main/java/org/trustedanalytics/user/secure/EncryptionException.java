@@ -17,6 +17,10 @@
 package org.trustedanalytics.user.secure;
 
 public class EncryptionException extends Exception {
+    public EncryptionException(String message) {
+        super(message);
+    }
+
     public EncryptionException(String message, Throwable cause) {
         super(message, cause);
     }
@@ -22,6 +22,7 @@ import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
+import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 import java.security.InvalidAlgorithmParameterException;
@@ -31,11 +32,29 @@ import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.util.Base64;
 
-
+/**
+ * Encrypts values and hashes keys of Redis stores. Cipher and MessageDigest instances are not
+ * thread-safe and costly to look up, so every thread gets its own ones and reinitializes them
+ * on each use. Every hash is salted.
+ *
+ * New values are sealed in {@link SecureEnvelope} with AES-GCM, {@link SecureJson} values
+ * written before can still be decrypted.
+ */
 public class EncryptionService {
-    private MessageDigest sha;
-    private SecretKeySpec key;
-    private SecureRandom secureRandom;
+    private static final String CIPHER_TRANSFORMATION = "AES/CBC/PKCS5Padding";
+    private static final String ENVELOPE_TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int ENVELOPE_TAG_BITS = 128;
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    private final byte[] salt;
+    private final SecretKeySpec key;
+    private final byte keyId;
+    private final SecureRandom secureRandom;
+
+    private final ThreadLocal<MessageDigest> digests = ThreadLocal.withInitial(EncryptionService::newDigest);
+    private final ThreadLocal<Cipher> ciphers = ThreadLocal.withInitial(() -> newCipher(CIPHER_TRANSFORMATION));
+    private final ThreadLocal<Cipher> envelopeCiphers =
+            ThreadLocal.withInitial(() -> newCipher(ENVELOPE_TRANSFORMATION));
 
     public EncryptionService(String cipher, String salt) {
         this(cipher, salt, new SecureRandom());
@@ -49,28 +68,25 @@ public class EncryptionService {
 
         secureRandom = sRandom;
         key = new SecretKeySpec(cipher.getBytes(), "AES");
-
-        try {
-            sha = MessageDigest.getInstance("SHA-256");
-            sha.update(salt.getBytes());
-
-        } catch (NoSuchAlgorithmException e)  {
-            throw new RuntimeEncryptionException("Unable to create encryption service", e);
-        }
+        this.salt = salt.getBytes();
+        // envelopes sealed with other key are recognized without trying to decrypt them
+        keyId = newDigest().digest(key.getEncoded())[0];
+
+        // fail on startup rather than on first use if algorithms are not available
+        digests.get();
+        ciphers.get();
+        envelopeCiphers.get();
     }
 
     public SecureJson encrypt(byte[] toEncrypt) throws EncryptionException {
         try {
-            Cipher encryptionCipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+            Cipher encryptionCipher = ciphers.get();
 
             encryptionCipher.init(Cipher.ENCRYPT_MODE, key, secureRandom);
             byte[] ivBytes = encryptionCipher.getIV();
             byte[] valueBytes = encryptionCipher.doFinal(toEncrypt);
 
             return new SecureJson(ivBytes, valueBytes);
-        } catch (NoSuchAlgorithmException|
-                NoSuchPaddingException e) {
-            throw new RuntimeEncryptionException("Unable to create encryption cipher", e);
         } catch (InvalidKeyException |
                 IllegalBlockSizeException |
                 BadPaddingException e) {
@@ -80,15 +96,51 @@ public class EncryptionService {
 
     public byte[] decrypt(SecureJson toDecrypt) throws EncryptionException {
         try {
-            Cipher decryptionCipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+            Cipher decryptionCipher = ciphers.get();
 
             IvParameterSpec iv = new IvParameterSpec(toDecrypt.getIv());
             decryptionCipher.init(Cipher.DECRYPT_MODE, key, iv);
 
             return decryptionCipher.doFinal(toDecrypt.getValue());
-        } catch (NoSuchAlgorithmException|
-                NoSuchPaddingException e)  {
-            throw new RuntimeEncryptionException("Unable to create decryption cipher", e);
+        } catch (InvalidKeyException |
+                InvalidAlgorithmParameterException |
+                IllegalBlockSizeException |
+                BadPaddingException e) {
+            throw new EncryptionException("Unable to decrypt message", e);
+        }
+    }
+
+    public SecureEnvelope seal(byte[] toEncrypt) throws EncryptionException {
+        byte[] nonce = new byte[SecureEnvelope.NONCE_LENGTH];
+        secureRandom.nextBytes(nonce);
+        try {
+            Cipher encryptionCipher = envelopeCiphers.get();
+
+            encryptionCipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(ENVELOPE_TAG_BITS, nonce));
+            // header is authenticated too, so format and key id cannot be swapped
+            encryptionCipher.updateAAD(SecureEnvelope.header(keyId));
+
+            return new SecureEnvelope(keyId, nonce, encryptionCipher.doFinal(toEncrypt));
+        } catch (InvalidKeyException |
+                InvalidAlgorithmParameterException |
+                IllegalBlockSizeException |
+                BadPaddingException e) {
+            throw new EncryptionException("Unable to encrypt message", e);
+        }
+    }
+
+    public byte[] open(SecureEnvelope toDecrypt) throws EncryptionException {
+        if (toDecrypt.getKeyId() != keyId) {
+            throw new EncryptionException("Message encrypted with unknown key " + toDecrypt.getKeyId());
+        }
+        try {
+            Cipher decryptionCipher = envelopeCiphers.get();
+
+            decryptionCipher.init(Cipher.DECRYPT_MODE, key,
+                    new GCMParameterSpec(ENVELOPE_TAG_BITS, toDecrypt.getNonce()));
+            decryptionCipher.updateAAD(SecureEnvelope.header(toDecrypt.getKeyId()));
+
+            return decryptionCipher.doFinal(toDecrypt.getValue());
         } catch (InvalidKeyException |
                 InvalidAlgorithmParameterException |
                 IllegalBlockSizeException |
@@ -98,6 +150,34 @@ public class EncryptionService {
     }
 
     public String hash(String toHash) {
+        MessageDigest sha = digests.get();
+        // digest() resets the instance, so salt has to be given again for every hash
+        sha.update(salt);
         return new String(Base64.getEncoder().encode(sha.digest(toHash.getBytes())));
     }
+
+    /**
+     * Hash of earlier versions, which salted only the first hash after start. Only for finding
+     * entries they stored.
+     */
+    public String legacyHash(String toHash) {
+        return new String(Base64.getEncoder().encode(digests.get().digest(toHash.getBytes())));
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeEncryptionException("Unable to create encryption service", e);
+        }
+    }
+
+    private static Cipher newCipher(String transformation) {
+        try {
+            return Cipher.getInstance(transformation);
+        } catch (NoSuchAlgorithmException |
+                NoSuchPaddingException e) {
+            throw new RuntimeEncryptionException("Unable to create encryption cipher", e);
+        }
+    }
 }
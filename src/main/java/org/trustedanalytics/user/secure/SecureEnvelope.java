@@ -0,0 +1,93 @@
+/**
+ *  Copyright (c) 2016 Intel Corporation 
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.trustedanalytics.user.secure;
+
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Binary form of an encrypted value: format byte, id of the key, nonce and ciphertext with
+ * authentication tag. Unlike {@link SecureJson} it is neither JSON nor base64 encoded.
+ */
+@ToString
+@EqualsAndHashCode
+public class SecureEnvelope {
+    public static final byte FORMAT_AES_GCM = 1;
+    public static final int NONCE_LENGTH = 12;
+
+    private static final int HEADER_LENGTH = 2;
+    private static final int TAG_LENGTH = 16;
+
+    private final byte keyId;
+    private final byte[] nonce;
+    private final byte[] value;
+
+    public SecureEnvelope(byte keyId, byte[] nonce, byte[] value) {
+        this.keyId = keyId;
+        this.nonce = nonce;
+        this.value = value;
+    }
+
+    /**
+     * Tells envelopes from legacy Secure-JSON values, which always start with '{'.
+     */
+    public static boolean isEnvelope(byte[] bytes) {
+        return bytes != null && bytes.length > 0 && bytes[0] == FORMAT_AES_GCM;
+    }
+
+    public static SecureEnvelope fromBytes(byte[] bytes) throws EncryptionException {
+        if (!isEnvelope(bytes)) {
+            throw new EncryptionException("Unknown secure envelope format");
+        }
+        if (bytes.length < HEADER_LENGTH + NONCE_LENGTH + TAG_LENGTH) {
+            throw new EncryptionException("Secure envelope is truncated");
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 1, bytes.length - 1);
+        byte keyId = buffer.get();
+        byte[] nonce = new byte[NONCE_LENGTH];
+        buffer.get(nonce);
+        byte[] value = new byte[buffer.remaining()];
+        buffer.get(value);
+        return new SecureEnvelope(keyId, nonce, value);
+    }
+
+    static byte[] header(byte keyId) {
+        return new byte[]{FORMAT_AES_GCM, keyId};
+    }
+
+    public byte[] toBytes() {
+        return ByteBuffer.allocate(HEADER_LENGTH + nonce.length + value.length)
+                .put(header(keyId))
+                .put(nonce)
+                .put(value)
+                .array();
+    }
+
+    public byte getKeyId() {
+        return keyId;
+    }
+
+    public byte[] getNonce() {
+        return nonce;
+    }
+
+    public byte[] getValue() {
+        return value;
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ *  Copyright (c) 2016 Intel Corporation 
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.trustedanalytics.user.secure.serializer;
+
+import org.springframework.data.redis.serializer.JacksonJsonRedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+import org.trustedanalytics.user.secure.EncryptionException;
+import org.trustedanalytics.user.secure.EncryptionService;
+import org.trustedanalytics.user.secure.SecureEnvelope;
+
+/**
+ * Writes values as binary secure envelopes. Secure-JSON values written before are still read,
+ * they are replaced by envelopes when they are written again.
+ */
+public class SecureEnvelopeRedisSerializer<T> extends SecureJacksonJsonRedisSerializer<T> {
+
+    private final EncryptionService encryptionService;
+
+    private final JacksonJsonRedisSerializer<T> jsonSerializer;
+
+    public SecureEnvelopeRedisSerializer(Class<T> type, EncryptionService encryptionService) {
+        super(type, encryptionService);
+        this.encryptionService = encryptionService;
+        this.jsonSerializer = new JacksonJsonRedisSerializer<T>(type);
+    }
+
+    @Override
+    public T deserialize(byte[] bytes) throws SerializationException {
+        if(bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if(!SecureEnvelope.isEnvelope(bytes)) {
+            return super.deserialize(bytes);
+        }
+
+        try {
+            byte[] plainJson = encryptionService.open(SecureEnvelope.fromBytes(bytes));
+            return jsonSerializer.deserialize(plainJson);
+        } catch (EncryptionException e) {
+            throw new SerializationException("Could not decrypt secure envelope", e);
+        }
+    }
+
+    @Override
+    public byte[] serialize(Object t) throws SerializationException {
+        if(t == null) {
+            return new byte[0];
+        }
+
+        try {
+            byte[] plainJson = jsonSerializer.serialize(t);
+            return encryptionService.seal(plainJson).toBytes();
+        } catch (EncryptionException e) {
+            throw new SerializationException("Could not encrypt secure envelope", e);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ *  Copyright (c) 2015 Intel Corporation 
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.trustedanalytics.user.common;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import feign.Request;
+import feign.Response;
+import feign.Util;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.util.EntityUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ApacheHttpFeignClientTest {
+
+    private static final Request.Options OPTIONS = new Request.Options(1000, 2000);
+
+    @Mock
+    private HttpClient httpClient;
+
+    private ApacheHttpFeignClient sut;
+
+    private TrackingInputStream responseBody;
+
+    @Before
+    public void setUp() throws IOException {
+        sut = new ApacheHttpFeignClient(httpClient);
+        responseBody = new TrackingInputStream("{\"name\":\"org\"}".getBytes(StandardCharsets.UTF_8));
+        BasicHttpEntity entity = new BasicHttpEntity();
+        entity.setContent(responseBody);
+        BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 201, "Created");
+        response.addHeader("Content-Type", "application/json");
+        response.addHeader("Set-Cookie", "a=1");
+        response.addHeader("Set-Cookie", "b=2");
+        response.setEntity(entity);
+        when(httpClient.execute(any(HttpUriRequest.class))).thenReturn(response);
+    }
+
+    @Test
+    public void execute_requestWithBody_headersAndBodyPassed() throws IOException {
+        Map<String, Collection<String>> headers = new LinkedHashMap<>();
+        headers.put("Authorization", Collections.singletonList("bearer token"));
+        headers.put("Accept", Arrays.asList("application/json", "text/plain"));
+        headers.put("Content-Length", Collections.singletonList("13"));
+        byte[] body = "{\"org\":\"new\"}".getBytes(StandardCharsets.UTF_8);
+
+        sut.execute(Request.create("POST", "http://api.example.com/v2/organizations", headers, body,
+                StandardCharsets.UTF_8), OPTIONS);
+
+        ArgumentCaptor<HttpUriRequest> captor = ArgumentCaptor.forClass(HttpUriRequest.class);
+        verify(httpClient).execute(captor.capture());
+        HttpUriRequest request = captor.getValue();
+        assertEquals("POST", request.getMethod());
+        assertEquals("http://api.example.com/v2/organizations", request.getURI().toString());
+        assertEquals("bearer token", request.getFirstHeader("Authorization").getValue());
+        assertEquals(2, request.getHeaders("Accept").length);
+        // computed by HttpClient from the entity
+        assertFalse(request.containsHeader("Content-Length"));
+        assertArrayEquals(body, EntityUtils.toByteArray(((HttpEntityEnclosingRequest) request).getEntity()));
+    }
+
+    @Test
+    public void execute_requestWithoutBody_noEntitySent() throws IOException {
+        sut.execute(Request.create("GET", "http://api.example.com/v2/organizations",
+                Collections.emptyMap(), null, StandardCharsets.UTF_8), OPTIONS);
+
+        ArgumentCaptor<HttpUriRequest> captor = ArgumentCaptor.forClass(HttpUriRequest.class);
+        verify(httpClient).execute(captor.capture());
+        assertFalse(captor.getValue() instanceof HttpEntityEnclosingRequest);
+    }
+
+    @Test
+    public void execute_responseReceived_statusHeadersAndBodyMappedAndStreamClosed() throws IOException {
+        Response response = sut.execute(Request.create("GET", "http://api.example.com/v2/organizations",
+                Collections.emptyMap(), null, StandardCharsets.UTF_8), OPTIONS);
+
+        assertEquals(201, response.status());
+        assertEquals("Created", response.reason());
+        assertEquals(Collections.singletonList("application/json"), response.headers().get("Content-Type"));
+        assertEquals(Arrays.asList("a=1", "b=2"), response.headers().get("Set-Cookie"));
+        assertEquals("{\"name\":\"org\"}",
+                new String(Util.toByteArray(response.body().asInputStream()), StandardCharsets.UTF_8));
+        // connection goes back to the pool once the stream is consumed and closed
+        assertTrue(responseBody.closed);
+    }
+
+    private static class TrackingInputStream extends ByteArrayInputStream {
+        private boolean closed;
+
+        TrackingInputStream(byte[] content) {
+            super(content);
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            super.close();
+        }
+    }
+}
@@ -16,14 +16,25 @@
 
 package org.trustedanalytics.user.common;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
 import org.trustedanalytics.user.invite.WrongEmailAddressException;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.trustedanalytics.user.common.BlacklistEmailValidator;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -37,6 +48,9 @@ public class EmailValidatorTest {
 
     private List<String> forbiddenDomains = new ArrayList<>();
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Before
     public void setUp(){
         forbiddenDomains.add("example.com");
@@ -58,4 +72,49 @@ public class EmailValidatorTest {
     public void validateEmailAddress_invalidEmail_exceptionThrown(){
         emailValidator.validate(INVALID_EMAIL);
     }
+
+    @Test
+    public void validateEmailAddress_subdomainOfBlockedDomain_notBlocked(){
+        emailValidator.validate("foo@mail.example.com");
+    }
+
+    @Test(expected = WrongEmailAddressException.class)
+    public void validateEmailAddress_wildcardBlockedSubdomain_exceptionThrown(){
+        emailValidator = new BlacklistEmailValidator(Arrays.asList("*.example.com"), Collections.emptyList(), null, 0);
+        emailValidator.validate("foo@mail.example.com");
+    }
+
+    @Test
+    public void validateEmailAddress_allowedSubdomainOfWildcardBlockedDomain(){
+        emailValidator = new BlacklistEmailValidator(Arrays.asList("*.example.com"),
+                Arrays.asList("good.example.com"), null, 0);
+        emailValidator.validate("foo@good.example.com");
+        emailValidator.validate("foo@example.com");
+    }
+
+    @Test
+    public void validateEmailAddress_domainAddedToFile_blockedAfterReload() throws IOException {
+        Path file = folder.newFile("domains.txt").toPath();
+        Files.write(file, Arrays.asList("# disposable", "disposable.org"));
+        emailValidator = new BlacklistEmailValidator(forbiddenDomains, Collections.emptyList(), file, 3600);
+        assertBlocked("foo@disposable.org");
+        emailValidator.validate("foo@throwaway.org");
+
+        Files.write(file, Arrays.asList("disposable.org", "throwaway.org"));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 1000));
+        emailValidator.reloadIfModified();
+
+        assertBlocked("foo@throwaway.org");
+        assertBlocked(VALID_EMAIL_BLOCKED_DOMAIN);
+        emailValidator.destroy();
+    }
+
+    private void assertBlocked(String email) {
+        try {
+            emailValidator.validate(email);
+            fail("Expected " + email + " to be blocked");
+        } catch (WrongEmailAddressException e) {
+            assertEquals("That domain is blocked", e.getMessage());
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,76 @@
+/**
+ *  Copyright (c) 2015 Intel Corporation 
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.trustedanalytics.user.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.UUID;
+
+public class GenerationGuardTest {
+
+    private GenerationGuard sut;
+
+    private Cache<UUID, String> cache;
+
+    @Before
+    public void setUp() {
+        sut = new GenerationGuard();
+        cache = CacheBuilder.newBuilder().build();
+    }
+
+    @Test
+    public void getIfPresentOrLoad_cached_loaderNotCalled() {
+        UUID userId = UUID.randomUUID();
+        cache.put(userId, "cached");
+
+        String value = sut.getIfPresentOrLoad(cache, userId, userId, () -> {
+            throw new AssertionError("loader called");
+        });
+
+        assertEquals("cached", value);
+    }
+
+    @Test
+    public void getIfPresentOrLoad_userInvalidatedDuringLoad_valueReturnedButNotCached() {
+        UUID userId = UUID.randomUUID();
+
+        String value = sut.getIfPresentOrLoad(cache, userId, userId, () -> {
+            sut.invalidate(cache, userId, key -> key.equals(userId));
+            return "loaded";
+        });
+
+        assertEquals("loaded", value);
+        assertNull(cache.getIfPresent(userId));
+    }
+
+    @Test
+    public void getIfPresentOrLoad_otherUserInvalidatedBefore_valueCached() {
+        UUID userId = UUID.randomUUID();
+        UUID otherId = UUID.randomUUID();
+        sut.invalidate(cache, otherId, key -> key.equals(otherId));
+
+        sut.getIfPresentOrLoad(cache, userId, userId, () -> "loaded");
+
+        assertEquals("loaded", cache.getIfPresent(userId));
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ *  Copyright (c) 2015 Intel Corporation 
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.trustedanalytics.user.common;
+
+import static org.junit.Assert.assertEquals;
+
+import com.sun.net.httpserver.HttpServer;
+import feign.Request;
+import feign.Response;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+public class HttpConnectionPoolTest {
+
+    private static final byte[] BODY = "{\"resources\":[]}".getBytes(StandardCharsets.UTF_8);
+
+    private HttpServer server;
+
+    private HttpConnectionPool sut;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            exchange.sendResponseHeaders(200, BODY.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(BODY);
+            }
+        });
+        server.start();
+        sut = new HttpConnectionPool(10, 5, 60);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        sut.destroy();
+        server.stop(0);
+    }
+
+    @Test
+    public void execute_responseRead_connectionReleasedAndReused() throws IOException {
+        ApacheHttpFeignClient client = new ApacheHttpFeignClient(sut.getHttpClient());
+
+        Response first = client.execute(get(), new Request.Options());
+        Response second = client.execute(get(), new Request.Options());
+
+        assertEquals(200, first.status());
+        assertEquals(200, second.status());
+        assertEquals(0, metric("http.pool.leased"));
+        assertEquals(1, metric("http.pool.available"));
+        assertEquals(10, metric("http.pool.max"));
+    }
+
+    private Request get() {
+        String url = "http://localhost:" + server.getAddress().getPort() + "/v2/organizations";
+        return Request.create("GET", url, Collections.emptyMap(), null, StandardCharsets.UTF_8);
+    }
+
+    private int metric(String name) {
+        return sut.metrics().stream()
+                .filter(metric -> metric.getName().equals(name))
+                .map(metric -> metric.getValue().intValue())
+                .findFirst()
+                .get();
+    }
+}
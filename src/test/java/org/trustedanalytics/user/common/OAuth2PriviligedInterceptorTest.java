@@ -0,0 +1,88 @@
+/**
+ *  Copyright (c) 2015 Intel Corporation 
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.trustedanalytics.user.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class OAuth2PriviligedInterceptorTest {
+
+    @Test
+    public void getAccessToken_tokenValid_fetchedOnce() {
+        CountingInterceptor sut = new CountingInterceptor(TimeUnit.HOURS.toMillis(1));
+
+        OAuth2AccessToken first = sut.getAccessToken();
+        OAuth2AccessToken second = sut.getAccessToken();
+
+        assertSame(first, second);
+        assertEquals(1, sut.fetches.get());
+        assertEquals(1, sut.getRefreshes());
+        assertEquals(1, sut.getHits());
+    }
+
+    @Test
+    public void getAccessToken_tokenAboutToExpire_refreshed() {
+        CountingInterceptor sut = new CountingInterceptor(TimeUnit.SECONDS.toMillis(10));
+
+        OAuth2AccessToken first = sut.getAccessToken();
+        OAuth2AccessToken second = sut.getAccessToken();
+
+        assertNotSame(first, second);
+        assertEquals(2, sut.fetches.get());
+        assertEquals(2, sut.getRefreshes());
+    }
+
+    @Test
+    public void getAccessToken_refreshFailsWhileTokenValid_currentTokenUsed() {
+        CountingInterceptor sut = new CountingInterceptor(TimeUnit.SECONDS.toMillis(10));
+        OAuth2AccessToken first = sut.getAccessToken();
+
+        sut.failing = true;
+        OAuth2AccessToken second = sut.getAccessToken();
+
+        assertSame(first, second);
+    }
+
+    private static class CountingInterceptor extends OAuth2PriviligedInterceptor {
+        private final AtomicInteger fetches = new AtomicInteger();
+        private final long validityMillis;
+        private boolean failing;
+
+        CountingInterceptor(long validityMillis) {
+            super(null);
+            this.validityMillis = validityMillis;
+        }
+
+        @Override
+        protected OAuth2AccessToken fetchAccessToken() {
+            if (failing) {
+                throw new IllegalStateException("UAA unavailable");
+            }
+            DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken("token-" + fetches.incrementAndGet());
+            token.setExpiration(new Date(System.currentTimeMillis() + validityMillis));
+            return token;
+        }
+    }
+}
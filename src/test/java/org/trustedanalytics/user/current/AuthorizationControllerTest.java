@@ -0,0 +1,133 @@
+/**
+ *  Copyright (c) 2015 Intel Corporation 
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.trustedanalytics.user.current;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.client.HttpClientErrorException;
+import org.trustedanalytics.cloud.cc.api.CcOperationsOrgsSpaces;
+import org.trustedanalytics.cloud.cc.api.CcOrg;
+import org.trustedanalytics.cloud.cc.api.CcOrgPermission;
+import rx.Observable;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.UUID;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AuthorizationControllerTest {
+
+    private AuthorizationController sut;
+
+    private PermissionsCache permissionsCache;
+
+    @Mock
+    private CcOperationsOrgsSpaces ccClient;
+
+    @Mock
+    private UserDetailsFinder detailsFinder;
+
+    @Mock
+    private Authentication authentication;
+
+    private final UUID userGuid = UUID.randomUUID();
+
+    @Before
+    public void setUp() {
+        permissionsCache = new PermissionsCache(100, 60);
+        sut = new AuthorizationController(ccClient, detailsFinder, Runnable::run, permissionsCache);
+        when(detailsFinder.findUserId(authentication)).thenReturn(userGuid);
+    }
+
+    @Test
+    public void getPermissions_adminWithOrgsFilter_onlyRequestedOrgsFetched() {
+        UUID existing = UUID.randomUUID();
+        UUID missing = UUID.randomUUID();
+        when(detailsFinder.getRole(authentication)).thenReturn(UserRole.ADMIN);
+        when(ccClient.getOrg(existing)).thenReturn(Observable.just(new CcOrg(existing, "existing")));
+        when(ccClient.getOrg(missing)).thenReturn(Observable.error(new HttpClientErrorException(HttpStatus.NOT_FOUND)));
+
+        Collection<CcOrgPermission> permissions = sut.getPermissions(existing + "," + missing, authentication);
+
+        assertEquals(1, permissions.size());
+        assertTrue(permissions.iterator().next().isManager());
+        verify(ccClient, never()).getOrgs();
+    }
+
+    @Test
+    public void getPermissions_adminWithRepeatedOrg_orgFetchedOnce() {
+        UUID org = UUID.randomUUID();
+        when(detailsFinder.getRole(authentication)).thenReturn(UserRole.ADMIN);
+        when(ccClient.getOrg(org)).thenReturn(Observable.just(new CcOrg(org, "org")));
+
+        Collection<CcOrgPermission> permissions = sut.getPermissions(org + "," + org, authentication);
+
+        assertEquals(1, permissions.size());
+        verify(ccClient, times(1)).getOrg(org);
+    }
+
+    @Test
+    public void getPermissions_adminWithoutFilter_allOrgsListed() {
+        when(detailsFinder.getRole(authentication)).thenReturn(UserRole.ADMIN);
+        when(ccClient.getOrgs()).thenReturn(Observable.just(new CcOrg(UUID.randomUUID(), "first"),
+            new CcOrg(UUID.randomUUID(), "second")));
+
+        Collection<CcOrgPermission> permissions = sut.getPermissions(null, authentication);
+
+        assertEquals(2, permissions.size());
+    }
+
+    @Test
+    public void getPermissions_userAskedTwice_cloudControllerAskedOnceUntilRolesChange() {
+        when(detailsFinder.getRole(authentication)).thenReturn(UserRole.USER);
+        when(ccClient.getUserPermissions(any(), any())).thenReturn(Collections.emptyList());
+
+        sut.getPermissions(null, authentication);
+        sut.getPermissions(null, authentication);
+        verify(ccClient, times(1)).getUserPermissions(any(), any());
+
+        permissionsCache.orgRolesChanged(userGuid, UUID.randomUUID());
+        sut.getPermissions(null, authentication);
+        verify(ccClient, times(2)).getUserPermissions(any(), any());
+    }
+
+    @Test
+    public void getPermissions_rolesChangedDuringLoad_permissionsNotCached() {
+        when(detailsFinder.getRole(authentication)).thenReturn(UserRole.USER);
+        when(ccClient.getUserPermissions(any(), any())).thenAnswer(invocation -> {
+            permissionsCache.orgRolesChanged(userGuid, UUID.randomUUID());
+            return Collections.emptyList();
+        });
+
+        sut.getPermissions(null, authentication);
+        sut.getPermissions(null, authentication);
+
+        verify(ccClient, times(2)).getUserPermissions(any(), any());
+    }
+}
@@ -0,0 +1,228 @@
+/**
+ *  Copyright (c) 2015 Intel Corporation 
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.trustedanalytics.user.invite;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.cloudfoundry.identity.uaa.scim.ScimUser;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thymeleaf.spring4.SpringTemplateEngine;
+import org.trustedanalytics.cloud.cc.api.CcOperations;
+import org.trustedanalytics.cloud.cc.api.manageusers.Role;
+import org.trustedanalytics.cloud.uaa.UaaOperations;
+import org.trustedanalytics.cloud.uaa.UserIdNamePair;
+import org.trustedanalytics.user.common.OrgAndUserGuids;
+import org.trustedanalytics.user.invite.access.AccessInvitations;
+import org.trustedanalytics.user.invite.access.AccessInvitationsService;
+import org.trustedanalytics.user.invite.keyvaluestore.InMemoryStore;
+import org.trustedanalytics.user.invite.securitycode.SecurityCode;
+import org.trustedanalytics.user.invite.securitycode.SecurityCodeService;
+import org.trustedanalytics.user.manageusers.UserNamesCache;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@RunWith(MockitoJUnitRunner.class)
+public class EmailInvitationsServiceTest {
+
+    private static final String USER_EMAIL = "email@example.com";
+    private static final String PASSWORD = "password";
+    private static final String ORG_NAME = "org";
+    private static final UUID USER_GUID = UUID.randomUUID();
+    private static final SecurityCode INVITATION = new SecurityCode(USER_EMAIL, "code");
+
+    @Mock
+    private SpringTemplateEngine templateEngine;
+
+    @Mock
+    private AccessInvitationsService accessInvitationsService;
+
+    @Mock
+    private SecurityCodeService securityCodeService;
+
+    @Mock
+    private UaaOperations uaaPrivilegedClient;
+
+    @Mock
+    private CcOperations ccPrivilegedClient;
+
+    @Mock
+    private OrgNameLookup orgNameLookup;
+
+    @Mock
+    private UserNamesCache userNamesCache;
+
+    @Mock
+    private MessageService messageService;
+
+    @Mock
+    private InvitationLinkGenerator invitationLinkGenerator;
+
+    @InjectMocks
+    private EmailInvitationsService sut = new EmailInvitationsService(null);
+
+    private ExecutorService executor;
+
+    private InMemoryStore<RegistrationJournal> registrationJournal;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+        registrationJournal = new InMemoryStore<>();
+        ReflectionTestUtils.setField(sut, "ccCallsExecutor", executor);
+        ReflectionTestUtils.setField(sut, "registrationJournal", registrationJournal);
+        when(uaaPrivilegedClient.findUserIdByName(USER_EMAIL)).thenReturn(Optional.empty());
+        when(uaaPrivilegedClient.createUser(USER_EMAIL, PASSWORD))
+                .thenReturn(new ScimUser(USER_GUID.toString(), USER_EMAIL, null, null));
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void createUser_orgCreationAllowed_createOrgWithDefaultSpace() {
+        UUID orgGuid = UUID.randomUUID();
+        UUID spaceGuid = UUID.randomUUID();
+        when(accessInvitationsService.getAccessInvitations(USER_EMAIL))
+                .thenReturn(Optional.of(new AccessInvitations(true)));
+        when(ccPrivilegedClient.createOrganization(ORG_NAME)).thenReturn(orgGuid);
+        when(ccPrivilegedClient.createSpace(orgGuid, "default")).thenReturn(spaceGuid);
+
+        OrgAndUserGuids guids = sut.createUser(INVITATION, PASSWORD, ORG_NAME).get();
+
+        assertEquals(orgGuid, guids.getOrgGuid());
+        assertEquals(USER_GUID, guids.getUserGuid());
+        verify(userNamesCache).invalidate(USER_GUID);
+        verify(ccPrivilegedClient).createUser(USER_GUID);
+        verify(ccPrivilegedClient).assignUserToOrganization(USER_GUID, orgGuid);
+        verify(ccPrivilegedClient).assignUserToSpace(USER_GUID, spaceGuid);
+    }
+
+    @Test(expected = OrgExistsException.class)
+    public void createUser_orgNameTaken_throwOrgExists() {
+        when(orgNameLookup.exists(ORG_NAME)).thenReturn(true);
+
+        sut.createUser(INVITATION, PASSWORD, ORG_NAME);
+    }
+
+    @Test
+    public void createUser_retriedAfterCcFailure_resumeWithoutCreatingUaaUserAgain() {
+        UUID orgGuid = UUID.randomUUID();
+        UUID spaceGuid = UUID.randomUUID();
+        when(accessInvitationsService.getAccessInvitations(USER_EMAIL))
+                .thenReturn(Optional.of(new AccessInvitations(true)));
+        when(ccPrivilegedClient.createOrganization(ORG_NAME)).thenReturn(orgGuid);
+        when(ccPrivilegedClient.createSpace(orgGuid, "default")).thenReturn(spaceGuid);
+        doThrow(new IllegalStateException("CC unavailable")).doNothing()
+                .when(ccPrivilegedClient).assignUserToSpace(USER_GUID, spaceGuid);
+
+        try {
+            sut.createUser(INVITATION, PASSWORD, ORG_NAME);
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertEquals("CC unavailable", e.getMessage());
+        }
+        // user created in the first attempt exists in UAA now
+        when(uaaPrivilegedClient.findUserIdByName(USER_EMAIL))
+                .thenReturn(Optional.of(UserIdNamePair.of(USER_GUID, USER_EMAIL)));
+        when(orgNameLookup.exists(ORG_NAME)).thenReturn(true);
+
+        OrgAndUserGuids guids = sut.createUser(INVITATION, PASSWORD, ORG_NAME).get();
+
+        assertEquals(orgGuid, guids.getOrgGuid());
+        assertFalse(registrationJournal.hasKey(INVITATION.getCode()));
+        verify(uaaPrivilegedClient).createUser(anyString(), anyString());
+        verify(ccPrivilegedClient).createUser(USER_GUID);
+        verify(ccPrivilegedClient).createOrganization(ORG_NAME);
+        verify(ccPrivilegedClient).createSpace(orgGuid, "default");
+        verify(ccPrivilegedClient).assignUserToOrganization(USER_GUID, orgGuid);
+        verify(ccPrivilegedClient, times(2)).assignUserToSpace(USER_GUID, spaceGuid);
+    }
+
+    @Test
+    public void createUser_registrationCompleted_removeJournal() {
+        when(accessInvitationsService.getAccessInvitations(USER_EMAIL))
+                .thenReturn(Optional.of(new AccessInvitations(false)));
+
+        sut.createUser(INVITATION, PASSWORD);
+
+        assertFalse(registrationJournal.hasKey(INVITATION.getCode()));
+        verify(securityCodeService, never()).findByMail(anyString());
+    }
+
+    @Test
+    public void createUser_oneOfInvitedRolesFails_assignOthersAndReportFailure() {
+        UUID failingOrg = UUID.randomUUID();
+        UUID org = UUID.randomUUID();
+        UUID space = UUID.randomUUID();
+        AccessInvitations invitations = new AccessInvitations(false);
+        invitations.addOrgAccessInvitation(failingOrg, Collections.singleton(Role.USERS));
+        invitations.addOrgAccessInvitation(org, Collections.singleton(Role.MANAGERS));
+        invitations.addSpaceAccessInvitation(space, Collections.singleton(Role.DEVELOPERS));
+        when(accessInvitationsService.getAccessInvitations(USER_EMAIL)).thenReturn(Optional.of(invitations));
+        doThrow(new IllegalStateException("CC unavailable"))
+                .when(ccPrivilegedClient).assignOrgRole(USER_GUID, failingOrg, Role.USERS);
+
+        try {
+            sut.createUser(INVITATION, PASSWORD);
+            fail("Expected RoleAssignmentException");
+        } catch (RoleAssignmentException e) {
+            assertEquals(1, e.getFailures().size());
+        }
+
+        verify(ccPrivilegedClient).assignOrgRole(USER_GUID, org, Role.MANAGERS);
+        verify(ccPrivilegedClient).assignSpaceRole(USER_GUID, space, Role.DEVELOPERS);
+    }
+
+    @Test
+    public void sendInviteEmails_codeNotGeneratedForOne_reportItAndSendOthersWithoutAskingUaa() {
+        String failing = "failing@example.com";
+        when(securityCodeService.generateCode(failing)).thenThrow(new IllegalStateException("Store unavailable"));
+        when(securityCodeService.generateCode(USER_EMAIL)).thenReturn(INVITATION);
+
+        Map<String, Exception> failures = sut.sendInviteEmails(Arrays.asList(failing, USER_EMAIL), "admin");
+
+        assertEquals(Collections.singleton(failing), failures.keySet());
+        verify(uaaPrivilegedClient, never()).findUserIdByName(anyString());
+        ArgumentCaptor<List> sent = ArgumentCaptor.forClass(List.class);
+        verify(messageService).sendMimeMessages(sent.capture());
+        assertEquals(1, sent.getValue().size());
+    }
+}
@@ -34,8 +34,10 @@ import org.trustedanalytics.user.common.UserExistsException;
 import org.trustedanalytics.user.current.UserDetailsFinder;
 import org.trustedanalytics.user.invite.access.AccessInvitations;
 import org.trustedanalytics.user.invite.access.AccessInvitationsService;
+import org.trustedanalytics.user.invite.keyvaluestore.IndexPage;
 import org.trustedanalytics.user.invite.rest.ErrorDescriptionModel;
 import org.trustedanalytics.user.invite.rest.InvitationModel;
+import org.trustedanalytics.user.invite.rest.InvitationsPage;
 import org.trustedanalytics.user.invite.rest.InvitationsController;
 import org.trustedanalytics.user.invite.securitycode.SecurityCodeService;
 
@@ -51,6 +53,7 @@ import org.trustedanalytics.user.manageusers.UsersService;
 import java.util.Optional;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 
@@ -126,6 +129,28 @@ public class InvitationsControllerTest {
         assertEquals("Updated pending invitation", result.getDetails());
     }
 
+    @Test
+    public void testGetPendingInvitationsPage_moreEmailsLeft_returnNextCursor() {
+        when(invitationsService.getPendingInvitationsEmails("a", null, 2, false))
+                .thenReturn(new IndexPage(Arrays.asList("a1@example.com", "a2@example.com"), "17"));
+
+        InvitationsPage page = sut.getPendingInvitationsPage(2, "a", null, "asc");
+
+        assertEquals(Arrays.asList("a1@example.com", "a2@example.com"), page.getEmails());
+        assertEquals("17", page.getNextCursor());
+    }
+
+    @Test
+    public void testGetPendingInvitationsPage_lastPage_noNextCursor() {
+        when(invitationsService.getPendingInvitationsEmails("", "17", 2, true))
+                .thenReturn(new IndexPage(Arrays.asList("a@example.com"), null));
+
+        InvitationsPage page = sut.getPendingInvitationsPage(2, "", "17", "desc");
+
+        assertEquals(Arrays.asList("a@example.com"), page.getEmails());
+        assertEquals(null, page.getNextCursor());
+    }
+
     @Test(expected = WrongEmailAddressException.class)
     public void testAddInvitation_WrongEmailAddress() {
         String invalidEmail = "invalidEmail";
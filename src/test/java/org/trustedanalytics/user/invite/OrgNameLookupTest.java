@@ -0,0 +1,76 @@
+/**
+ *  Copyright (c) 2015 Intel Corporation 
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.trustedanalytics.user.invite;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.web.client.RestOperations;
+
+import java.io.IOException;
+
+@RunWith(MockitoJUnitRunner.class)
+public class OrgNameLookupTest {
+
+    private static final String API_URL = "http://api.example.com";
+    private static final String ORGS_BY_NAME_URL = API_URL + "/v2/organizations?q=name:{name}";
+
+    @Mock
+    private RestOperations restOperations;
+
+    private OrgNameLookup sut;
+
+    @Before
+    public void setUp() {
+        sut = new OrgNameLookup(restOperations, API_URL);
+    }
+
+    @Test
+    public void exists_orgWithNameReturned_returnTrue() throws IOException {
+        when(restOperations.getForObject(ORGS_BY_NAME_URL, JsonNode.class, "testorg"))
+                .thenReturn(page("{\"total_results\":1,\"resources\":[{\"entity\":{\"name\":\"testorg\"}}]}"));
+
+        assertTrue(sut.exists("testorg"));
+    }
+
+    @Test
+    public void exists_orgWithNameOfDifferentCaseReturned_returnFalse() throws IOException {
+        when(restOperations.getForObject(ORGS_BY_NAME_URL, JsonNode.class, "testorg"))
+                .thenReturn(page("{\"total_results\":1,\"resources\":[{\"entity\":{\"name\":\"TestOrg\"}}]}"));
+
+        assertFalse(sut.exists("testorg"));
+    }
+
+    @Test
+    public void exists_noOrgReturned_returnFalse() throws IOException {
+        when(restOperations.getForObject(ORGS_BY_NAME_URL, JsonNode.class, "testorg"))
+                .thenReturn(page("{\"total_results\":0,\"resources\":[]}"));
+
+        assertFalse(sut.exists("testorg"));
+    }
+
+    private static JsonNode page(String json) throws IOException {
+        return new ObjectMapper().readTree(json);
+    }
+}
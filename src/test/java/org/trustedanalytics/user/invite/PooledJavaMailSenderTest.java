@@ -0,0 +1,108 @@
+/**
+ *  Copyright (c) 2015 Intel Corporation 
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.trustedanalytics.user.invite;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.MimeMessage;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.mail.MailSendException;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PooledJavaMailSenderTest {
+
+    private static final int MAX_MESSAGES_PER_CONNECTION = 3;
+
+    @Mock
+    private Transport transport;
+
+    @Mock
+    private MimeMessage first;
+
+    @Mock
+    private MimeMessage second;
+
+    private PooledJavaMailSender sut;
+
+    @Before
+    public void setUp() {
+        sut = new PooledJavaMailSender(2, MAX_MESSAGES_PER_CONNECTION, 60000) {
+            @Override
+            protected Transport getTransport(Session session) {
+                return transport;
+            }
+        };
+        when(transport.isConnected()).thenReturn(true);
+    }
+
+    @Test
+    public void send_severalMessages_connectionReused() throws MessagingException {
+        sut.send(first);
+        sut.send(second);
+
+        verify(transport, times(1)).connect(anyString(), anyInt(), anyString(), anyString());
+        verify(transport).sendMessage(first, null);
+        verify(transport).sendMessage(second, null);
+    }
+
+    @Test
+    public void send_batch_sentOverSingleConnection() throws MessagingException {
+        sut.send(first, second);
+
+        verify(transport, times(1)).connect(anyString(), anyInt(), anyString(), anyString());
+        verify(transport, times(2)).sendMessage(any(), any());
+    }
+
+    @Test
+    public void send_connectionSentMaxMessages_newConnectionOpened() throws MessagingException {
+        sut.send(first, second, first, second);
+
+        verify(transport, times(2)).connect(anyString(), anyInt(), anyString(), anyString());
+        verify(transport, times(1)).close();
+    }
+
+    @Test
+    public void send_connectionFailed_failedMessageReportedAndConnectionReopened() throws MessagingException {
+        doThrow(new MessagingException("connection reset")).when(transport).sendMessage(first, null);
+
+        try {
+            sut.send(first, second);
+            fail("MailSendException expected");
+        } catch (MailSendException e) {
+            assertEquals(1, e.getFailedMessages().size());
+            assertEquals(first, e.getFailedMessages().keySet().iterator().next());
+        }
+
+        verify(transport, times(2)).connect(anyString(), anyInt(), anyString(), anyString());
+        verify(transport).sendMessage(second, null);
+    }
+}
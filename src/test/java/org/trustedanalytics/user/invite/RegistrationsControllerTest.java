@@ -119,7 +119,7 @@ public class RegistrationsControllerTest {
         doReturn(true).when(accessInvitationsService).getOrgCreationEligibility(Matchers.anyString());
 
         doThrow(new UserExistsException("")).when(invitationsService).createUser(
-                Matchers.anyString(), Matchers.anyString(), any());
+                any(SecurityCode.class), Matchers.anyString(), any());
 
         sut.addUser(registration, SECURITY_CODE);
     }
@@ -132,7 +132,7 @@ public class RegistrationsControllerTest {
         registration.setPassword("123456");
         doReturn(true).when(accessInvitationsService).getOrgCreationEligibility(Matchers.anyString());
         doThrow(new OrgExistsException("")).when(invitationsService).createUser(
-                Matchers.anyString(), Matchers.anyString(), any());
+                any(SecurityCode.class), Matchers.anyString(), any());
 
         sut.addUser(registration, SECURITY_CODE);
     }
@@ -146,7 +146,7 @@ public class RegistrationsControllerTest {
         registration.setOrg("abcdefgh");
         doReturn(true).when(accessInvitationsService).getOrgCreationEligibility(Matchers.anyString());
         doThrow(new HttpClientErrorException(HttpStatus.INTERNAL_SERVER_ERROR)).when(invitationsService).createUser(
-                Matchers.anyString(), Matchers.anyString(), Matchers.anyString());
+                any(SecurityCode.class), Matchers.anyString(), Matchers.anyString());
 
         sut.addUser(registration, SECURITY_CODE);
     }
@@ -159,7 +159,7 @@ public class RegistrationsControllerTest {
         registration.setPassword("123456");
         doReturn(true).when(accessInvitationsService).getOrgCreationEligibility(Matchers.anyString());
         doThrow(new InvalidOrganizationNameException("")).when(invitationsService).createUser(
-                Matchers.anyString(), Matchers.anyString(), any());
+                any(SecurityCode.class), Matchers.anyString(), any());
 
         sut.addUser(registration, SECURITY_CODE);
     }
@@ -32,6 +32,7 @@ import org.mockito.runners.MockitoJUnitRunner;
 
 import java.util.UUID;
 import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
 
 
 @RunWith(MockitoJUnitRunner.class)
@@ -109,27 +110,44 @@ public class AccessInvitationsServiceTest {
 
     @Test
     public void testCreateOrUpdateInvitation_invitationDoesNotExists_createsNew() {
-        when(mockInvitationsStore.hasKey(USER_EMAIL)).thenReturn(false);
+        computeOn(null);
         Consumer consumer = mock(Consumer.class);
         AccessInvitationsService.CreateOrUpdateState state = sut.createOrUpdateInvitation(USER_EMAIL, consumer);
 
         verify(consumer).accept(any());
         verify(mockInvitationsStore, never()).get(anyString());
+        verify(mockInvitationsStore, never()).put(anyString(), any());
         assertEquals(AccessInvitationsService.CreateOrUpdateState.CREATED, state);
     }
 
     @Test
     public void testCreateOrUpdateInvitation_invitationExists_replace() {
-        when(mockInvitationsStore.hasKey(USER_EMAIL)).thenReturn(true);
+        computeOn(mockUserInvitations);
         Consumer consumer = mock(Consumer.class);
         AccessInvitationsService.CreateOrUpdateState state = sut.createOrUpdateInvitation(USER_EMAIL, consumer);
 
-        verify(consumer).accept(any());
-        verify(mockInvitationsStore).get(anyString());
+        verify(consumer).accept(mockUserInvitations);
+        verify(mockInvitationsStore).compute(eq(USER_EMAIL), any());
         assertEquals(AccessInvitationsService.CreateOrUpdateState.UPDATED, state);
 
     }
 
+    @Test
+    public void testAddEligibilityToCreateOrg_invitationExists_setEligibleAtomically() {
+        computeOn(mockUserInvitations);
+
+        sut.addEligibilityToCreateOrg(USER_EMAIL);
+
+        verify(mockUserInvitations).setEligibleToCreateOrg(true);
+        verify(mockInvitationsStore, never()).put(anyString(), any());
+    }
+
+    @SuppressWarnings("unchecked")
+    private void computeOn(AccessInvitations current) {
+        when(mockInvitationsStore.compute(eq(USER_EMAIL), any()))
+                .thenAnswer(invocation -> ((UnaryOperator<AccessInvitations>) invocation.getArguments()[1]).apply(current));
+    }
+
 
 
 }
@@ -0,0 +1,183 @@
+/**
+ *  Copyright (c) 2015 Intel Corporation 
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.trustedanalytics.user.invite.keyvaluestore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.trustedanalytics.user.invite.securitycode.SecurityCode;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class InMemoryStoreTest {
+
+    private static final String USER_EMAIL = "email@example.com";
+
+    private InMemoryStore<SecurityCode> sut;
+
+    @Before
+    public void setUp() {
+        sut = new InMemoryStore<>(SecurityCode::getEmail);
+    }
+
+    @Test
+    public void testGetByIndex_valuePut_returnValue() {
+        SecurityCode code = new SecurityCode(USER_EMAIL, "code");
+        sut.putIfAbsent(code.getCode(), code);
+
+        assertEquals(code, sut.getByIndex(USER_EMAIL));
+    }
+
+    @Test
+    public void testGetByIndex_valueRemoved_returnNull() {
+        SecurityCode code = new SecurityCode(USER_EMAIL, "code");
+        sut.put(code.getCode(), code);
+        sut.remove(code.getCode());
+
+        assertNull(sut.getByIndex(USER_EMAIL));
+    }
+
+    @Test
+    public void testGetByIndex_olderValueRemoved_keepNewerValue() {
+        SecurityCode older = new SecurityCode(USER_EMAIL, "older");
+        SecurityCode newer = new SecurityCode(USER_EMAIL, "newer");
+        sut.put(older.getCode(), older);
+        sut.put(newer.getCode(), newer);
+        sut.remove(older.getCode());
+
+        assertEquals(newer, sut.getByIndex(USER_EMAIL));
+    }
+
+    @Test
+    public void testCompute_concurrentUpdates_noUpdateLost() throws InterruptedException {
+        InMemoryStore<Integer> counters = new InMemoryStore<>();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 1000; i++) {
+            executor.submit(() -> counters.compute("key", current -> current == null ? 1 : current + 1));
+        }
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        assertEquals(Integer.valueOf(1000), counters.get("key"));
+    }
+
+    @Test
+    public void testGetIndexKeys_prefixAndCursor_returnNextKeysInOrder() {
+        Arrays.asList("b@example.com", "a1@example.com", "a3@example.com", "a2@example.com", "c@example.com")
+                .forEach(email -> sut.put(email + "-code", new SecurityCode(email, email + "-code")));
+
+        IndexPage first = sut.getIndexKeys("a", null, 2, false);
+        assertEquals(Arrays.asList("a1@example.com", "a2@example.com"), first.getKeys());
+        IndexPage last = sut.getIndexKeys("a", first.getNextCursor(), 2, false);
+        assertEquals(Arrays.asList("a3@example.com"), last.getKeys());
+        assertNull(last.getNextCursor());
+        assertEquals(Arrays.asList("a2@example.com", "a1@example.com"),
+                sut.getIndexKeys("a", "a3@example.com", 10, true).getKeys());
+        assertEquals(Arrays.asList("c@example.com", "b@example.com"), sut.getIndexKeys("", "x", 2, true).getKeys());
+    }
+
+    @Test
+    public void testPurgeExpired_entryExpired_removeEntryAndIndex() {
+        SecurityCode expired = new SecurityCode(USER_EMAIL, "expired");
+        SecurityCode valid = new SecurityCode("other@example.com", "valid");
+        sut.putIfAbsent(expired.getCode(), expired, Duration.ZERO);
+        sut.putIfAbsent(valid.getCode(), valid, Duration.ofHours(1));
+
+        assertEquals(1, sut.purgeExpired());
+
+        assertFalse(sut.hasKey(expired.getCode()));
+        assertNull(sut.getByIndex(USER_EMAIL));
+        assertTrue(sut.hasKey(valid.getCode()));
+        assertEquals(Collections.singletonList("other@example.com"), sut.getIndexKeys("", null, 10, false).getKeys());
+    }
+
+    @Test
+    public void testPurgeExpired_entryRenewed_keepEntry() {
+        SecurityCode code = new SecurityCode(USER_EMAIL, "code");
+        sut.put(code.getCode(), code, Duration.ZERO);
+        sut.put(code.getCode(), code, Duration.ofHours(1));
+
+        assertEquals(0, sut.purgeExpired());
+        assertEquals(code, sut.get(code.getCode()));
+    }
+
+    @Test
+    public void testPurgeExpired_defaultTtl_appliedToPut() {
+        InMemoryStore<String> store = new InMemoryStore<>(null, Duration.ZERO);
+        store.put("key", "value");
+        store.put("persistent", "value", null);
+
+        assertEquals(1, store.purgeExpired());
+        assertFalse(store.hasKey("key"));
+        assertTrue(store.hasKey("persistent"));
+    }
+
+    @Test
+    public void testGet_entryExpiredNotPurged_treatedAsAbsent() {
+        SecurityCode code = new SecurityCode(USER_EMAIL, "code");
+        sut.put(code.getCode(), code, Duration.ZERO);
+
+        assertNull(sut.get(code.getCode()));
+        assertFalse(sut.hasKey(code.getCode()));
+        assertNull(sut.getByIndex(USER_EMAIL));
+        assertTrue(sut.values().isEmpty());
+    }
+
+    @Test
+    public void testPutIfAbsent_entryExpiredNotPurged_replaceEntry() {
+        SecurityCode expired = new SecurityCode(USER_EMAIL, "code");
+        SecurityCode fresh = new SecurityCode("other@example.com", "code");
+        sut.put(expired.getCode(), expired, Duration.ZERO);
+
+        assertTrue(sut.putIfAbsent(fresh.getCode(), fresh, Duration.ofHours(1)));
+
+        assertEquals(fresh, sut.get("code"));
+        assertNull(sut.getByIndex(USER_EMAIL));
+        assertEquals(0, sut.purgeExpired());
+    }
+
+    @Test
+    public void testCompute_entryExpiredNotPurged_computeFromNull() {
+        InMemoryStore<String> store = new InMemoryStore<>();
+        store.put("key", "expired", Duration.ZERO);
+
+        String computed = store.compute("key", current -> current == null ? "fresh" : current + "-updated", null);
+
+        assertEquals("fresh", computed);
+        assertEquals(0, store.purgeExpired());
+        assertEquals("fresh", store.get("key"));
+    }
+
+    @Test
+    public void testHasIndex_indexFunctionGiven_true() {
+        assertTrue(sut.hasIndex());
+        assertFalse(new InMemoryStore<SecurityCode>().hasIndex());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testGetByIndex_noIndexFunction_throwUnsupportedOperation() {
+        new InMemoryStore<SecurityCode>().getByIndex(USER_EMAIL);
+    }
+}
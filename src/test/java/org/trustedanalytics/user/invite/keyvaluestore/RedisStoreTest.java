@@ -0,0 +1,136 @@
+/**
+ *  Copyright (c) 2015 Intel Corporation 
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.trustedanalytics.user.invite.keyvaluestore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.anyVararg;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.when;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.serializer.JacksonJsonRedisSerializer;
+import org.trustedanalytics.user.invite.securitycode.SecurityCode;
+import org.trustedanalytics.user.secure.EncryptionService;
+import org.trustedanalytics.user.secure.serializer.HashedStringRedisSerializer;
+import org.trustedanalytics.user.secure.serializer.LegacyHashedStringRedisSerializer;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RedisStoreTest {
+
+    private static final String CIPHER = "16-DigitsCipherK";
+    private static final String SALT = "Randomly_Ganareted_32-DigitsSalt";
+    private static final String KEY = "email@example.com";
+    // unsalted hash of the key, as computed by earlier versions
+    private static final byte[] LEGACY_FIELD = "KlOdZSAma1bDsMUlueYSiFi67Mte6baUopBuEjyNbdM=".getBytes();
+    private static final byte[] FIELD = "jVxfRzp42MAbwvZj3nyMkZKPXriLhRh2uH7lMvxsmbw=".getBytes();
+    private static final SecurityCode CODE = new SecurityCode(KEY, "code");
+    private static final JacksonJsonRedisSerializer<SecurityCode> VALUE_SERIALIZER =
+            new JacksonJsonRedisSerializer<SecurityCode>(SecurityCode.class);
+
+    @Mock
+    private RedisOperations<String, SecurityCode> redisOps;
+
+    @Mock
+    private RedisConnection connection;
+
+    private RedisStore<SecurityCode> sut;
+
+    @Before
+    public void setUp() {
+        EncryptionService encryptionService = new EncryptionService(CIPHER, SALT);
+        doReturn(new HashedStringRedisSerializer(encryptionService)).when(redisOps).getHashKeySerializer();
+        doReturn(VALUE_SERIALIZER).when(redisOps).getHashValueSerializer();
+        when(redisOps.execute(any(RedisCallback.class)))
+                .thenAnswer(invocation -> ((RedisCallback<?>) invocation.getArguments()[0]).doInRedis(connection));
+
+        sut = new RedisStore<>(redisOps, "test-key");
+        sut.setLegacyKeySerializer(new LegacyHashedStringRedisSerializer(encryptionService));
+    }
+
+    @Test
+    public void testGet_valueStoredUnderLegacyHash_valueMovedAndReturned() {
+        AtomicBoolean moved = new AtomicBoolean();
+        when(connection.evalSha(anyString(), any(ReturnType.class), anyInt(), anyVararg())).thenAnswer(invocation -> {
+            // expanded arguments: sha, return type, number of keys, store, expiry, field, ...
+            Object[] args = invocation.getArguments();
+            if (args.length == 8 && Arrays.equals(FIELD, (byte[]) args[5])
+                    && Arrays.equals(LEGACY_FIELD, (byte[]) args[6])) {
+                moved.set(true);
+                return VALUE_SERIALIZER.serialize(CODE);
+            }
+            return null;
+        });
+
+        SecurityCode found = sut.get(KEY);
+
+        assertEquals(CODE, found);
+        assertTrue(moved.get());
+    }
+
+    @Test
+    public void testGet_valueStoredUnderCurrentHash_legacyHashNotTried() {
+        AtomicBoolean moved = new AtomicBoolean();
+        when(connection.evalSha(anyString(), any(ReturnType.class), anyInt(), anyVararg())).thenAnswer(invocation -> {
+            Object[] args = invocation.getArguments();
+            if (args.length == 7 && Arrays.equals(FIELD, (byte[]) args[5])) {
+                return VALUE_SERIALIZER.serialize(CODE);
+            }
+            moved.set(true);
+            return null;
+        });
+
+        SecurityCode found = sut.get(KEY);
+
+        assertEquals(CODE, found);
+        assertFalse(moved.get());
+    }
+
+    @Test
+    public void testGetIndexKeys_scanNotFinished_returnMatchingKeysOfPageAndScanCursor() {
+        sut = new RedisStore<>(redisOps, "test-key", SecurityCode::getEmail);
+        SecurityCode other = new SecurityCode("other@example.com", "other-code");
+        SecurityCode renamed = new SecurityCode("eve@example.com", "renamed-code");
+        when(connection.evalSha(anyString(), eq(ReturnType.MULTI), anyInt(), anyVararg())).thenReturn(Arrays.asList(
+                "17".getBytes(),
+                FIELD, VALUE_SERIALIZER.serialize(CODE),
+                "otherField".getBytes(), VALUE_SERIALIZER.serialize(other),
+                // index entry left by the previous value of the entry
+                "staleField".getBytes(), VALUE_SERIALIZER.serialize(renamed)));
+
+        IndexPage page = sut.getIndexKeys("e", null, 1, false);
+
+        assertEquals(Collections.singletonList(KEY), page.getKeys());
+        assertEquals("17", page.getNextCursor());
+    }
+}
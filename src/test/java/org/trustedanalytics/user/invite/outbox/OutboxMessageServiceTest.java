@@ -0,0 +1,216 @@
+/**
+ *  Copyright (c) 2015 Intel Corporation 
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.trustedanalytics.user.invite.outbox;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.mail.MailSendException;
+import org.trustedanalytics.user.invite.EmailMessage;
+import org.trustedanalytics.user.invite.MessageService;
+import org.trustedanalytics.user.invite.keyvaluestore.InMemoryStore;
+import org.trustedanalytics.user.invite.keyvaluestore.KeyValueStore;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+@RunWith(MockitoJUnitRunner.class)
+public class OutboxMessageServiceTest {
+
+    private static final String EMAIL = "user@example.com";
+    private static final String SUBJECT = "Invitation";
+    private static final String CONTENT = "<html></html>";
+
+    private static final int MAX_ATTEMPTS = 3;
+
+    private static final Duration DEAD_LETTER_TTL = Duration.ofDays(1);
+
+    @Mock
+    private MessageService transport;
+
+    private KeyValueStore<OutgoingMessage> outbox;
+
+    private DueIndex dueIndex;
+
+    private OutboxMessageService sut;
+
+    @Before
+    public void setUp() {
+        outbox = new InMemoryStore<>();
+        dueIndex = new InMemoryDueIndex();
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        sut.destroy();
+    }
+
+    @Test
+    public void sendMimeMessage_transportWorks_sentAndRemovedFromOutbox() throws InterruptedException {
+        sut = new OutboxMessageService(transport, outbox, dueIndex, 2, 1000, MAX_ATTEMPTS, 10, 60000,
+            DEAD_LETTER_TTL);
+
+        sut.sendMimeMessage(EMAIL, SUBJECT, CONTENT);
+
+        verify(transport, timeout(1000)).sendMimeMessage(EMAIL, SUBJECT, CONTENT);
+        awaitTrue(() -> outbox.values().isEmpty());
+    }
+
+    @Test
+    public void sendMimeMessage_transportSlow_returnsBeforeMessageIsSent() throws InterruptedException {
+        CountDownLatch transportReleased = new CountDownLatch(1);
+        doAnswerAfter(transportReleased);
+        sut = new OutboxMessageService(transport, outbox, dueIndex, 2, 1000, MAX_ATTEMPTS, 10, 60000,
+            DEAD_LETTER_TTL);
+
+        try {
+            sut.sendMimeMessage(EMAIL, SUBJECT, CONTENT);
+
+            assertEquals(1, outbox.values().size());
+        } finally {
+            transportReleased.countDown();
+        }
+        awaitTrue(() -> outbox.values().isEmpty());
+    }
+
+    @Test
+    public void sendMimeMessage_transportFailsOnce_retried() throws InterruptedException {
+        doThrow(new MailSendException("SMTP unavailable"))
+            .doNothing()
+            .when(transport).sendMimeMessage(EMAIL, SUBJECT, CONTENT);
+        sut = new OutboxMessageService(transport, outbox, dueIndex, 2, 1000, MAX_ATTEMPTS, 10, 60000,
+            DEAD_LETTER_TTL);
+
+        sut.sendMimeMessage(EMAIL, SUBJECT, CONTENT);
+
+        verify(transport, timeout(1000).times(2)).sendMimeMessage(EMAIL, SUBJECT, CONTENT);
+        awaitTrue(() -> outbox.values().isEmpty());
+    }
+
+    @Test
+    public void sendMimeMessage_transportAlwaysFails_deadLetteredAfterLastAttempt() throws InterruptedException {
+        doThrow(new MailSendException("SMTP unavailable"))
+            .when(transport).sendMimeMessage(EMAIL, SUBJECT, CONTENT);
+        sut = new OutboxMessageService(transport, outbox, dueIndex, 2, 1000, MAX_ATTEMPTS, 10, 60000,
+            DEAD_LETTER_TTL);
+
+        sut.sendMimeMessage(EMAIL, SUBJECT, CONTENT);
+
+        verify(transport, timeout(1000).times(MAX_ATTEMPTS)).sendMimeMessage(EMAIL, SUBJECT, CONTENT);
+        awaitTrue(() -> outbox.values().stream().allMatch(OutgoingMessage::isDeadLettered));
+        OutgoingMessage message = outbox.values().iterator().next();
+        assertEquals(MAX_ATTEMPTS, message.getAttempts());
+        assertEquals("SMTP unavailable", message.getLastError());
+        assertEquals(0, dueIndex.size());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void sendMimeMessages_oneMessageRejected_othersSentTogetherAndRejectedRetried()
+        throws InterruptedException {
+        String rejected = "rejected@example.com";
+        doAnswer(invocation -> {
+            List<EmailMessage> batch = (List<EmailMessage>) invocation.getArguments()[0];
+            assertEquals(3, batch.size());
+            EmailMessage failed = batch.stream().filter(m -> rejected.equals(m.getEmail())).findFirst().get();
+            throw new MailSendException(Collections.<Object, Exception>singletonMap(failed, new IllegalStateException("rejected")));
+        }).when(transport).sendMimeMessages(anyListOf(EmailMessage.class));
+        sut = new OutboxMessageService(transport, outbox, dueIndex, 2, 1000, MAX_ATTEMPTS, 10, 60000,
+            DEAD_LETTER_TTL);
+
+        sut.sendMimeMessages(Arrays.asList(
+            new EmailMessage(EMAIL, SUBJECT, CONTENT),
+            new EmailMessage("other@example.com", SUBJECT, CONTENT),
+            new EmailMessage(rejected, SUBJECT, CONTENT)));
+
+        verify(transport, timeout(1000)).sendMimeMessage(rejected, SUBJECT, CONTENT);
+        awaitTrue(() -> outbox.values().isEmpty());
+    }
+
+    @Test
+    public void outboxSwept_messageLeftByOtherInstance_sent() throws InterruptedException {
+        OutgoingMessage leftover = OutgoingMessage.create(EMAIL, SUBJECT, CONTENT, System.currentTimeMillis());
+        outbox.put(leftover.getId(), leftover);
+
+        sut = new OutboxMessageService(transport, outbox, dueIndex, 2, 1000, MAX_ATTEMPTS, 10, 60000,
+            DEAD_LETTER_TTL);
+
+        verify(transport, timeout(1000)).sendMimeMessage(EMAIL, SUBJECT, CONTENT);
+        awaitTrue(() -> outbox.values().isEmpty());
+    }
+
+    @Test
+    public void outboxSwept_messageClaimedByOtherInstance_notSent() throws InterruptedException {
+        long now = System.currentTimeMillis();
+        OutgoingMessage claimed = OutgoingMessage.create(EMAIL, SUBJECT, CONTENT, now)
+            .claimedUntil(now + TimeUnit.MINUTES.toMillis(1));
+        outbox.put(claimed.getId(), claimed);
+
+        sut = new OutboxMessageService(transport, outbox, dueIndex, 2, 1000, MAX_ATTEMPTS, 10, 60000,
+            DEAD_LETTER_TTL);
+
+        Thread.sleep(100);
+        verify(transport, never()).sendMimeMessage(EMAIL, SUBJECT, CONTENT);
+        assertEquals(1, outbox.values().size());
+    }
+
+    @Test
+    public void outboxIndexed_deadLetterOlderThanTtl_expired() throws InterruptedException {
+        long created = System.currentTimeMillis() - DEAD_LETTER_TTL.toMillis() - 1;
+        OutgoingMessage deadLetter = OutgoingMessage.create(EMAIL, SUBJECT, CONTENT, created)
+            .deadLettered("SMTP unavailable");
+        outbox.put(deadLetter.getId(), deadLetter);
+
+        sut = new OutboxMessageService(transport, outbox, dueIndex, 2, 1000, MAX_ATTEMPTS, 10, 60000,
+            DEAD_LETTER_TTL);
+
+        awaitTrue(() -> outbox.values().isEmpty());
+        assertEquals(0, dueIndex.size());
+        verify(transport, never()).sendMimeMessage(EMAIL, SUBJECT, CONTENT);
+    }
+
+    private void doAnswerAfter(CountDownLatch latch) {
+        doAnswer(invocation -> {
+            latch.await();
+            return null;
+        }).when(transport).sendMimeMessage(EMAIL, SUBJECT, CONTENT);
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 1000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
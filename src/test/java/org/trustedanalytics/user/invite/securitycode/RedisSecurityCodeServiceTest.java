@@ -21,17 +21,22 @@ import static org.junit.Assert.*;
 import static org.hamcrest.Matchers.isEmptyOrNullString;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.hasSize;
-import static java.util.stream.Collectors.toList;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
-import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
-import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.serializer.JacksonJsonRedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
 import org.trustedanalytics.user.invite.keyvaluestore.RedisStore;
 
 
@@ -42,34 +47,43 @@ public class RedisSecurityCodeServiceTest {
     private RedisOperations<String, SecurityCode> redisOps;
 
     @Mock
-    private HashOperations<String, String, SecurityCode> hashOps;
+    private RedisConnection connection;
+
+    // codes passed to the put script, which gets the code as field (argument 6, after the
+    // digest, return type, number of keys and three keys)
+    private final List<String> triedCodes = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        doReturn(new StringRedisSerializer()).when(redisOps).getHashKeySerializer();
+        doReturn(new JacksonJsonRedisSerializer<>(SecurityCode.class)).when(redisOps).getHashValueSerializer();
+        when(redisOps.execute(any(RedisCallback.class)))
+            .thenAnswer(invocation -> ((RedisCallback<?>) invocation.getArguments()[0]).doInRedis(connection));
+    }
 
     @Test
     public void shouldRetryAndSucceed() {
-        when(redisOps.<String, SecurityCode>opsForHash()).thenReturn(hashOps);
-        when(hashOps.putIfAbsent(anyString(), anyString(), any(SecurityCode.class)))
-            .thenReturn(Boolean.FALSE)
-            .thenReturn(Boolean.FALSE)
-            .thenReturn(Boolean.TRUE);
-
+        when(connection.evalSha(anyString(), any(ReturnType.class), anyInt(), anyVararg()))
+            .thenAnswer(invocation -> {
+                triedCodes.add(new String((byte[]) invocation.getArguments()[6]));
+                return triedCodes.size() < 3 ? 0L : 1L;
+            });
 
         RedisStore<SecurityCode> redisStore = new RedisStore<>(redisOps, "test-key");
         SecurityCodeService service = new SecurityCodeService(redisStore);
         SecurityCode code = service.generateCode("test@example.com");
 
         assertThat(code.getCode(), not(isEmptyOrNullString()));
-        ArgumentCaptor<SecurityCode> codeCaptor = ArgumentCaptor.forClass(SecurityCode.class);
-        verify(hashOps, times(3)).putIfAbsent(anyString(), anyString(), codeCaptor.capture());
+        assertEquals(3, triedCodes.size());
+        assertEquals(code.getCode(), triedCodes.get(2));
 
         //check that all generated codes were different
-        assertThat("Expected 3 different values for generated codes", 
-                new HashSet<String>(codeCaptor.getAllValues().stream().map(x -> x.getCode()).collect(toList())), hasSize(3));
+        assertThat("Expected 3 different values for generated codes", new HashSet<String>(triedCodes), hasSize(3));
     }
 
     @Test(expected = SecurityCodeGenerationException.class)
     public void shouldFailAfterRetries() {
-        when(redisOps.<String, SecurityCode>opsForHash()).thenReturn(hashOps);
-        when(hashOps.putIfAbsent(anyString(), anyString(), any(SecurityCode.class))).thenReturn(Boolean.FALSE);
+        when(connection.evalSha(anyString(), any(ReturnType.class), anyInt(), anyVararg())).thenReturn(0L);
 
         RedisStore<SecurityCode> redisStore = new RedisStore<>(redisOps, "test-key");
         SecurityCodeService service = new SecurityCodeService(redisStore);
@@ -44,14 +44,21 @@ import org.trustedanalytics.user.invite.InvitationsService;
 import org.trustedanalytics.user.invite.access.AccessInvitationsService;
 import org.trustedanalytics.user.invite.rest.EntityNotFoundException;
 import org.trustedanalytics.user.invite.securitycode.NoSuchUserException;
+import org.trustedanalytics.user.manageusers.BulkUserResult;
 import org.trustedanalytics.user.manageusers.CfUsersService;
 import org.trustedanalytics.user.manageusers.PasswordGenerator;
+import org.trustedanalytics.user.manageusers.RoleUpdateException;
+import org.trustedanalytics.user.manageusers.UserNamesCache;
 import org.trustedanalytics.user.manageusers.UserRequest;
+import org.junit.After;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.trustedanalytics.user.manageusers.UserRolesRequest;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
 import rx.Observable;
 
 import java.util.*;
@@ -72,6 +79,11 @@ public class CfUsersServiceTest {
     @Mock
     private AccessInvitationsService accessInvitationsService;
 
+    @After
+    public void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
     class UserComparator implements Comparator<User> {
         @Override
         public int compare(User o1, User o2) {
@@ -571,7 +583,7 @@ public class CfUsersServiceTest {
         verify(ccClient, never()).revokeOrgRole(userGuid, orgGuid, Role.USERS);
         verify(ccClient, never()).assignOrgRole(userGuid, orgGuid, Role.USERS);
         verify(ccClient, never()).revokeOrgRole(userGuid, orgGuid, Role.AUDITORS);
-        verify(ccClient, times(1)).assignOrgRole(userGuid, orgGuid, Role.AUDITORS);
+        verify(ccClient, never()).assignOrgRole(userGuid, orgGuid, Role.AUDITORS);
         verify(ccClient, times(1)).assignOrgRole(userGuid, orgGuid, Role.MANAGERS);
         verify(ccClient, times(1)).assignOrgRole(userGuid, orgGuid, Role.BILLING_MANAGERS);
     }
@@ -604,8 +616,186 @@ public class CfUsersServiceTest {
         verify(ccClient, never()).revokeSpaceRole(userGuid, spaceGuid, Role.USERS);
         verify(ccClient, never()).assignSpaceRole(userGuid, spaceGuid, Role.USERS);
         verify(ccClient, never()).revokeSpaceRole(userGuid, spaceGuid, Role.DEVELOPERS);
-        verify(ccClient, times(1)).assignSpaceRole(userGuid, spaceGuid, Role.DEVELOPERS);
+        verify(ccClient, never()).assignSpaceRole(userGuid, spaceGuid, Role.DEVELOPERS);
         verify(ccClient, times(1)).assignSpaceRole(userGuid, spaceGuid, Role.AUDITORS);
         verify(ccClient, times(1)).assignSpaceRole(userGuid, spaceGuid, Role.MANAGERS);
     }
+
+    @Test
+    public void getOrgUsers_calledTwiceWithinRequest_fetchedOnce() {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+        UUID orgGuid = UUID.randomUUID();
+        UUID userGuid = UUID.randomUUID();
+        String username = "testuser";
+
+        when(ccClient.getOrgUsersWithRoles(orgGuid))
+                .thenReturn(Observable.just(new User(username, userGuid, Lists.newArrayList(Role.USERS))));
+        when(uaaOperations.findUserNames(anyCollection()))
+                .thenReturn(Lists.newArrayList(UserIdNamePair.of(userGuid, username)));
+
+        CfUsersService cfUsersService =
+                new CfUsersService(ccClient, uaaOperations, invitationService, accessInvitationsService);
+        cfUsersService.getOrgUsers(orgGuid);
+        cfUsersService.getOrgUsers(orgGuid);
+
+        verify(ccClient, times(1)).getOrgUsersWithRoles(orgGuid);
+        verify(uaaOperations, times(1)).findUserNames(anyCollection());
+    }
+
+    @Test
+    public void getOrgUsers_rolesAssignedWithinRequest_fetchedAgain() {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+        UUID orgGuid = UUID.randomUUID();
+        UUID userGuid = UUID.randomUUID();
+
+        when(ccClient.getOrgUsersWithRoles(orgGuid)).thenReturn(Observable.empty());
+
+        CfUsersService cfUsersService =
+                new CfUsersService(ccClient, uaaOperations, invitationService, accessInvitationsService);
+        cfUsersService.getOrgUsers(orgGuid);
+        cfUsersService.assignOrgRolesToUser(userGuid, orgGuid, Role.USERS);
+        cfUsersService.getOrgUsers(orgGuid);
+
+        verify(ccClient, times(2)).getOrgUsersWithRoles(orgGuid);
+    }
+
+    @Test
+    public void assignOrgRolesToUser_severalCallsFail_allRolesAttemptedAndFailuresAggregated() {
+        UUID orgGuid = UUID.randomUUID();
+        UUID userGuid = UUID.randomUUID();
+        Mockito.doThrow(new IllegalStateException("managers")).when(ccClient)
+                .assignOrgRole(userGuid, orgGuid, Role.MANAGERS);
+        Mockito.doThrow(new IllegalStateException("auditors")).when(ccClient)
+                .assignOrgRole(userGuid, orgGuid, Role.AUDITORS);
+
+        CfUsersService cfUsersService =
+                new CfUsersService(ccClient, uaaOperations, invitationService, accessInvitationsService);
+        try {
+            cfUsersService.assignOrgRolesToUser(userGuid, orgGuid, Role.MANAGERS, Role.AUDITORS, Role.BILLING_MANAGERS);
+            fail("RoleUpdateException expected");
+        } catch (RoleUpdateException e) {
+            assertEquals("managers", e.getCause().getMessage());
+            assertEquals(1, e.getSuppressed().length);
+        }
+
+        verify(ccClient).assignOrgRole(userGuid, orgGuid, Role.BILLING_MANAGERS);
+    }
+
+    @Test
+    public void updateOrgUserRoles_oneRoleReplaced_onlyChangedRolesSent() {
+        UUID orgGuid = UUID.randomUUID();
+        UUID userGuid = UUID.randomUUID();
+        String username = "mariusz@example.com";
+        User orgUser = new User(username, userGuid, Lists.newArrayList(Role.USERS, Role.AUDITORS, Role.MANAGERS));
+
+        when(ccClient.getOrgUsersWithRoles(orgGuid)).thenReturn(Observable.just(orgUser));
+        when(uaaOperations.findUserNames(anyCollection())).thenReturn(Lists.newArrayList(UserIdNamePair.of(userGuid, username)));
+
+        UserRolesRequest userRolesRequest = new UserRolesRequest();
+        userRolesRequest.setRoles(Lists.newArrayList(Role.MANAGERS, Role.BILLING_MANAGERS));
+        CfUsersService cfUsersService =
+                new CfUsersService(ccClient, uaaOperations, invitationService, accessInvitationsService);
+        cfUsersService.updateOrgUserRoles(userGuid, orgGuid, userRolesRequest);
+
+        verify(ccClient, times(1)).revokeOrgRole(userGuid, orgGuid, Role.AUDITORS);
+        verify(ccClient, times(1)).assignOrgRole(userGuid, orgGuid, Role.BILLING_MANAGERS);
+        verify(ccClient, times(1)).revokeOrgRole(any(), any(), any());
+        verify(ccClient, times(1)).assignOrgRole(any(), any(), any());
+    }
+
+    @Test
+    public void isSpaceManager_orgLookupFailsButSpaceManager_granted() {
+        UUID spaceGuid = UUID.randomUUID();
+        UUID userGuid = UUID.randomUUID();
+
+        when(ccClient.getSpace(spaceGuid)).thenReturn(Observable.error(new IllegalStateException("CC unavailable")));
+        when(ccClient.getSpaceUsers(spaceGuid, Role.MANAGERS))
+                .thenReturn(Collections.singletonList(new User("manager", userGuid, Lists.newArrayList(Role.MANAGERS))));
+
+        CfUsersService cfUsersService =
+                new CfUsersService(ccClient, uaaOperations, invitationService, accessInvitationsService);
+
+        assertTrue(cfUsersService.isSpaceManager(userGuid, spaceGuid));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void isSpaceManager_orgLookupFailsAndNotSpaceManager_failureRethrown() {
+        UUID spaceGuid = UUID.randomUUID();
+
+        when(ccClient.getSpace(spaceGuid)).thenReturn(Observable.error(new IllegalStateException("CC unavailable")));
+        when(ccClient.getSpaceUsers(spaceGuid, Role.MANAGERS)).thenReturn(Collections.emptyList());
+
+        CfUsersService cfUsersService =
+                new CfUsersService(ccClient, uaaOperations, invitationService, accessInvitationsService);
+
+        cfUsersService.isSpaceManager(UUID.randomUUID(), spaceGuid);
+    }
+
+    @Test
+    public void addOrgUsers_existingAndNewUsers_existingAddedNewInvitedTogether() {
+        UUID orgGuid = UUID.randomUUID();
+        UUID existingGuid = UUID.randomUUID();
+        String existing = "existing@example.com";
+        String first = "first@example.com";
+        String second = "second@example.com";
+        String currentUsername = "admin@example.com";
+        when(uaaOperations.findUserIdByName(existing)).thenReturn(Optional.of(UserIdNamePair.of(existingGuid, existing)));
+        when(uaaOperations.findUserIdByName(first)).thenReturn(Optional.<UserIdNamePair>empty());
+        when(uaaOperations.findUserIdByName(second)).thenReturn(Optional.<UserIdNamePair>empty());
+        when(accessInvitationsService.createOrUpdateInvitation(anyString(), any()))
+            .thenReturn(AccessInvitationsService.CreateOrUpdateState.CREATED);
+        when(invitationService.sendInviteEmails(asList(first, second), currentUsername))
+            .thenReturn(Collections.singletonMap(second, new IllegalStateException("SMTP unavailable")));
+
+        CfUsersService cfUsersService =
+                new CfUsersService(ccClient, uaaOperations, invitationService, accessInvitationsService);
+
+        List<BulkUserResult> results = new ArrayList<>();
+        cfUsersService.addOrgUsers(asList(userRequest(existing, Role.MANAGERS), userRequest(first),
+            userRequest(second)), orgGuid, currentUsername, results::add);
+
+        verify(ccClient).assignOrgRole(existingGuid, orgGuid, Role.MANAGERS);
+        verify(invitationService, never()).sendInviteEmail(anyString(), anyString());
+        assertEquals(3, results.size());
+        assertEquals(BulkUserResult.State.ADDED, results.get(0).getState());
+        assertEquals(BulkUserResult.State.INVITED, results.get(1).getState());
+        assertEquals(BulkUserResult.State.FAILED, results.get(2).getState());
+        assertEquals("SMTP unavailable", results.get(2).getDetails());
+    }
+
+    @Test
+    public void addOrgUsers_chunkOfUsers_lookedUpInUaaWithSingleCall() {
+        UUID orgGuid = UUID.randomUUID();
+        UUID existingGuid = UUID.randomUUID();
+        String existing = "existing@example.com";
+        String invited = "invited@example.com";
+        List<Collection<String>> lookups = new ArrayList<>();
+        when(accessInvitationsService.createOrUpdateInvitation(anyString(), any()))
+            .thenReturn(AccessInvitationsService.CreateOrUpdateState.CREATED);
+        when(invitationService.sendInviteEmails(Collections.singletonList(invited), "admin"))
+            .thenReturn(Collections.emptyMap());
+
+        CfUsersService cfUsersService = new CfUsersService(ccClient, uaaOperations, invitationService,
+            accessInvitationsService, new UserNamesCache(10, 60), Collections.emptyList(), Runnable::run,
+            usernames -> {
+                lookups.add(new ArrayList<>(usernames));
+                return Collections.singletonMap(existing, existingGuid);
+            });
+
+        List<BulkUserResult> results = new ArrayList<>();
+        cfUsersService.addOrgUsers(asList(userRequest(existing), userRequest(invited)), orgGuid, "admin",
+            results::add);
+
+        assertEquals(Collections.singletonList(asList(existing, invited)), lookups);
+        verify(uaaOperations, never()).findUserIdByName(anyString());
+        verify(ccClient).assignOrgRole(existingGuid, orgGuid, Role.USERS);
+        assertEquals(BulkUserResult.State.ADDED, results.get(0).getState());
+        assertEquals(BulkUserResult.State.INVITED, results.get(1).getState());
+    }
+
+    private static UserRequest userRequest(String username, Role... roles) {
+        UserRequest userRequest = new UserRequest(username);
+        userRequest.setRoles(asList(roles));
+        return userRequest;
+    }
 }
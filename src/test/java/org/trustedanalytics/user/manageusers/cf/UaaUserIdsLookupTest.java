@@ -0,0 +1,77 @@
+/**
+ *  Copyright (c) 2015 Intel Corporation 
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.trustedanalytics.user.manageusers.cf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.web.client.RestOperations;
+import org.trustedanalytics.user.manageusers.UaaUserIdsLookup;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+
+@RunWith(MockitoJUnitRunner.class)
+public class UaaUserIdsLookupTest {
+
+    private static final String UAA_URL = "http://uaa.example.com";
+    private static final String USERS_BY_NAMES_URL =
+            UAA_URL + "/Users?attributes=id,userName&count={count}&filter={filter}";
+
+    @Mock
+    private RestOperations restOperations;
+
+    private UaaUserIdsLookup sut;
+
+    @Before
+    public void setUp() {
+        sut = new UaaUserIdsLookup(restOperations, UAA_URL);
+    }
+
+    @Test
+    public void findUserIds_oneOfUsersExists_returnItsIdUnderRequestedName() throws IOException {
+        UUID id = UUID.randomUUID();
+        when(restOperations.getForObject(USERS_BY_NAMES_URL, JsonNode.class, 2,
+                "userName eq \"User@example.com\" or userName eq \"new@example.com\""))
+                .thenReturn(page("{\"resources\":[{\"id\":\"" + id + "\",\"userName\":\"user@example.com\"}]}"));
+
+        Map<String, UUID> ids = sut.findUserIds(Arrays.asList("User@example.com", "new@example.com"));
+
+        assertEquals(Collections.singletonMap("User@example.com", id), ids);
+    }
+
+    @Test
+    public void findUserIds_noUsers_uaaNotAsked() {
+        assertTrue(sut.findUserIds(Collections.emptyList()).isEmpty());
+        verifyZeroInteractions(restOperations);
+    }
+
+    private static JsonNode page(String json) throws IOException {
+        return new ObjectMapper().readTree(json);
+    }
+}
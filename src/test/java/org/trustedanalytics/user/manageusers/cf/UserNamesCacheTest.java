@@ -0,0 +1,125 @@
+/**
+ *  Copyright (c) 2015 Intel Corporation 
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.trustedanalytics.user.manageusers.cf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyCollection;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.trustedanalytics.cloud.cc.api.CcOperations;
+import org.trustedanalytics.cloud.cc.api.manageusers.Role;
+import org.trustedanalytics.cloud.cc.api.manageusers.User;
+import org.trustedanalytics.cloud.uaa.UaaOperations;
+import org.trustedanalytics.cloud.uaa.UserIdNamePair;
+import org.trustedanalytics.user.invite.InvitationsService;
+import org.trustedanalytics.user.invite.access.AccessInvitationsService;
+import org.trustedanalytics.user.manageusers.CfUsersService;
+import org.trustedanalytics.user.manageusers.UserNamesCache;
+import rx.Observable;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+
+@RunWith(MockitoJUnitRunner.class)
+public class UserNamesCacheTest {
+
+    @Mock
+    private UaaOperations uaaOperations;
+
+    @Mock
+    private CcOperations ccClient;
+
+    @Mock
+    private InvitationsService invitationService;
+
+    @Mock
+    private AccessInvitationsService accessInvitationsService;
+
+    private UserNamesCache sut;
+
+    private final UUID cachedGuid = UUID.randomUUID();
+
+    @Before
+    public void setUp() {
+        sut = new UserNamesCache(100, 60);
+        when(uaaOperations.findUserNames(Collections.singleton(cachedGuid)))
+                .thenReturn(Collections.singletonList(UserIdNamePair.of(cachedGuid, "cached")));
+        sut.getUserNames(Collections.singleton(cachedGuid), uaaOperations::findUserNames);
+    }
+
+    @Test
+    public void getUserNames_allCached_uaaNotAsked() {
+        Map<UUID, String> result = sut.getUserNames(Collections.singleton(cachedGuid), uaaOperations::findUserNames);
+
+        assertEquals(ImmutableMap.of(cachedGuid, "cached"), result);
+        verify(uaaOperations, times(1)).findUserNames(anyCollection());
+    }
+
+    @Test
+    public void getUserNames_someMissing_onlyMissingLoadedAndCached() {
+        UUID missingGuid = UUID.randomUUID();
+        when(uaaOperations.findUserNames(Collections.singleton(missingGuid)))
+                .thenReturn(Collections.singletonList(UserIdNamePair.of(missingGuid, "missing")));
+
+        Map<UUID, String> result =
+                sut.getUserNames(ImmutableSet.of(cachedGuid, missingGuid), uaaOperations::findUserNames);
+        sut.getUserNames(ImmutableSet.of(cachedGuid, missingGuid), uaaOperations::findUserNames);
+
+        assertEquals(ImmutableMap.of(cachedGuid, "cached", missingGuid, "missing"), result);
+        verify(uaaOperations, times(1)).findUserNames(Collections.singleton(missingGuid));
+    }
+
+    @Test
+    public void getUserNames_unknownToUaa_notCached() {
+        UUID unknownGuid = UUID.randomUUID();
+        when(uaaOperations.findUserNames(Collections.singleton(unknownGuid)))
+                .thenReturn(Collections.singletonList(UserIdNamePair.of(unknownGuid, null)));
+
+        Map<UUID, String> result = sut.getUserNames(Collections.singleton(unknownGuid), uaaOperations::findUserNames);
+        sut.getUserNames(Collections.singleton(unknownGuid), uaaOperations::findUserNames);
+
+        assertTrue(result.isEmpty());
+        verify(uaaOperations, times(2)).findUserNames(Collections.singleton(unknownGuid));
+    }
+
+    @Test
+    public void deleteUser_nameCached_loadedAgain() {
+        UUID orgGuid = UUID.randomUUID();
+        when(ccClient.getOrgUsersWithRoles(orgGuid))
+                .thenReturn(Observable.just(new User("cached", cachedGuid, Lists.newArrayList(Role.USERS))));
+
+        CfUsersService cfUsersService = new CfUsersService(ccClient, uaaOperations, invitationService,
+                accessInvitationsService, sut, Collections.emptyList(), Runnable::run,
+                usernames -> Collections.emptyMap());
+        cfUsersService.getOrgUsers(orgGuid);
+        cfUsersService.deleteUser(cachedGuid);
+        cfUsersService.getOrgUsers(orgGuid);
+
+        verify(uaaOperations, times(2)).findUserNames(Collections.singleton(cachedGuid));
+    }
+}
@@ -16,33 +16,47 @@
 package org.trustedanalytics.user.manageusers.cf;
 
 import static org.mockito.Matchers.any;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.anyObject;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import org.trustedanalytics.cloud.cc.api.manageusers.Role;
 import org.trustedanalytics.cloud.cc.api.manageusers.User;
 import org.trustedanalytics.user.common.BlacklistEmailValidator;
 import org.trustedanalytics.user.common.FormatUserRolesValidator;
 import org.trustedanalytics.user.common.WrongUserRolesException;
 import org.trustedanalytics.user.common.WrongUuidFormatException;
 import org.trustedanalytics.user.current.UserDetailsFinder;
+import org.trustedanalytics.user.invite.WrongEmailAddressException;
 import org.trustedanalytics.user.invite.config.AccessTokenDetails;
+import org.trustedanalytics.user.manageusers.AuthorizationDecisionCache;
+import org.trustedanalytics.user.manageusers.BulkUserResult;
 import org.trustedanalytics.user.manageusers.UserRequest;
 import org.trustedanalytics.user.manageusers.UsersController;
 import org.trustedanalytics.user.manageusers.UsersService;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
 
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 @RunWith(MockitoJUnitRunner.class)
 public class UsersControllerTest {
@@ -64,7 +78,8 @@ public class UsersControllerTest {
 
     @Before
     public void setup() {
-        sut = new UsersController(usersService, priviledgedUsersService, detailsFinder, emailValidator, formatRolesValidator);
+        sut = new UsersController(usersService, priviledgedUsersService, detailsFinder, emailValidator, formatRolesValidator,
+            new AuthorizationDecisionCache(0, 0), new ObjectMapper());
         AccessTokenDetails details = new AccessTokenDetails(UUID.randomUUID());
         when(userAuthentication.getDetails()).thenReturn(details);
         req = new UserRequest();
@@ -161,4 +176,74 @@ public class UsersControllerTest {
         verify(priviledgedUsersService, times(0)).addSpaceUser(anyObject(), anyObject(), anyObject());
 
     }
+
+    @Test
+    public void getOrgUsers_repeatedByManager_decisionCached() {
+        UUID orgId = UUID.randomUUID();
+        UUID userId = UUID.randomUUID();
+        OAuth2Authentication auth = new OAuth2Authentication(null, userAuthentication);
+        sut = new UsersController(usersService, priviledgedUsersService, detailsFinder, emailValidator, formatRolesValidator,
+            new AuthorizationDecisionCache(100, 60), new ObjectMapper());
+
+        when(detailsFinder.findUserId(auth)).thenReturn(userId);
+        when(usersService.isOrgManager(userId, orgId)).thenReturn(true);
+        sut.getOrgUsers(orgId.toString(), auth);
+        sut.getOrgUsers(orgId.toString(), auth);
+
+        verify(usersService, times(1)).isOrgManager(userId, orgId);
+        verify(priviledgedUsersService, times(2)).getOrgUsers(orgId);
+    }
+
+    @Test
+    public void getOrgUsers_rolesChangedDuringCheck_decisionNotCached() {
+        UUID orgId = UUID.randomUUID();
+        UUID userId = UUID.randomUUID();
+        OAuth2Authentication auth = new OAuth2Authentication(null, userAuthentication);
+        AuthorizationDecisionCache decisionCache = new AuthorizationDecisionCache(100, 60);
+        sut = new UsersController(usersService, priviledgedUsersService, detailsFinder, emailValidator, formatRolesValidator,
+            decisionCache, new ObjectMapper());
+
+        when(detailsFinder.findUserId(auth)).thenReturn(userId);
+        when(usersService.isOrgManager(userId, orgId)).thenAnswer(invocation -> {
+            decisionCache.orgRolesChanged(userId, orgId);
+            return true;
+        }).thenReturn(false);
+        sut.getOrgUsers(orgId.toString(), auth);
+        sut.getOrgUsers(orgId.toString(), auth);
+
+        verify(usersService, times(2)).isOrgManager(userId, orgId);
+        verify(priviledgedUsersService, times(1)).getOrgUsers(orgId);
+        verify(usersService, times(1)).getOrgUsers(orgId);
+    }
+
+    @Test
+    public void createOrgUsers_duplicateAndInvalidRows_reportedAndRestPassedToService() throws Exception {
+        UUID orgId = UUID.randomUUID();
+        OAuth2Authentication auth = new OAuth2Authentication(null, userAuthentication);
+        when(detailsFinder.findUserName(auth)).thenReturn("admin@example.com");
+        when(usersService.isOrgManager(any(), eq(orgId))).thenReturn(true);
+        doThrow(new WrongEmailAddressException("That domain is blocked"))
+            .when(emailValidator).validate("user@blocked.com");
+        doAnswer(invocation -> {
+            Consumer<BulkUserResult> results = (Consumer<BulkUserResult>) invocation.getArguments()[3];
+            results.accept(new BulkUserResult("user@example.com", BulkUserResult.State.INVITED));
+            return null;
+        }).when(priviledgedUsersService).addOrgUsers(any(), eq(orgId), eq("admin@example.com"), any());
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        String managers = new ObjectMapper().convertValue(Role.MANAGERS, String.class);
+
+        sut.createOrgUsersFromCsv("user@example.com," + managers + "\n USER@example.com\nuser@blocked.com\n",
+            orgId.toString(), auth, response);
+
+        ArgumentCaptor<List> accepted = ArgumentCaptor.forClass(List.class);
+        verify(priviledgedUsersService).addOrgUsers(accepted.capture(), eq(orgId), eq("admin@example.com"), any());
+        assertEquals(1, accepted.getValue().size());
+
+        String[] lines = response.getContentAsString().split("\n");
+        assertEquals(3, lines.length);
+        assertTrue(lines[0].contains("DUPLICATE"));
+        assertTrue(lines[1].contains("INVALID"));
+        assertTrue(lines[2].contains("INVITED"));
+    }
 }
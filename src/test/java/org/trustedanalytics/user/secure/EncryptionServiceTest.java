@@ -25,6 +25,13 @@ import org.mockito.runners.MockitoJUnitRunner;
 import org.mockito.stubbing.Answer;
 
 import java.security.SecureRandom;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.doAnswer;
@@ -59,6 +66,44 @@ public class EncryptionServiceTest {
         Assert.assertEquals("jVxfRzp42MAbwvZj3nyMkZKPXriLhRh2uH7lMvxsmbw=",sut);
     }
 
+    @Test
+    public void testHash_calledTwice_sameSaltedHash() {
+        String userMail = "email@example.com";
+
+        encryptionService.hash("other@example.com");
+        String sut = encryptionService.hash(userMail);
+
+        Assert.assertEquals("jVxfRzp42MAbwvZj3nyMkZKPXriLhRh2uH7lMvxsmbw=",sut);
+    }
+
+    @Test
+    public void testLegacyHash_hashOfEarlierVersions() {
+        String userMail = "email@example.com";
+
+        encryptionService.hash(userMail);
+        String sut = encryptionService.legacyHash(userMail);
+
+        Assert.assertEquals("KlOdZSAma1bDsMUlueYSiFi67Mte6baUopBuEjyNbdM=",sut);
+    }
+
+    @Test
+    public void testHash_concurrentCalls_sameHashes() throws Exception {
+        String userMail = "email@example.com";
+        Callable<String> hashing = () -> encryptionService.hash(userMail);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        try {
+            List<Future<String>> hashes = executor.invokeAll(IntStream.range(0, 1000)
+                    .mapToObj(i -> hashing)
+                    .collect(Collectors.toList()));
+            for (Future<String> hash : hashes) {
+                Assert.assertEquals("jVxfRzp42MAbwvZj3nyMkZKPXriLhRh2uH7lMvxsmbw=", hash.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     @Test
     public void testEncryption_allOK() throws EncryptionException {
         doAnswer(new Answer() {
@@ -89,6 +134,20 @@ public class EncryptionServiceTest {
         byte[] sut = encryptionService.decrypt(secureJson);
     }
 
+    @Test
+    public void testDecryption_afterFailedDecryption_allOK() throws EncryptionException {
+        try {
+            encryptionService.decrypt(new SecureJson(IV, "bbb".getBytes()));
+            Assert.fail("Expected EncryptionException");
+        } catch (EncryptionException e) {
+            // cipher of this thread is reused below
+        }
+
+        byte[] sut = encryptionService.decrypt(SECURE_JSON);
+
+        Assert.assertEquals(ORGINAL, new String(sut));
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void test256bitCipher_exceptionThrown() {
         EncryptionService sut = new EncryptionService(CIPHER + CIPHER, SALT);
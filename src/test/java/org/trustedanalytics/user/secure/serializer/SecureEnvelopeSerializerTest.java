@@ -0,0 +1,99 @@
+/**
+ *  Copyright (c) 2016 Intel Corporation 
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.trustedanalytics.user.secure.serializer;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.springframework.data.redis.serializer.SerializationException;
+import org.trustedanalytics.user.invite.securitycode.SecurityCode;
+import org.trustedanalytics.user.secure.EncryptionService;
+import org.trustedanalytics.user.secure.SecureEnvelope;
+
+public class SecureEnvelopeSerializerTest {
+
+    private static final String CIPHER = "16-DigitsCipherK";
+    private static final String OTHER_CIPHER = "16-DigitsOtherCK";
+    private static final String SALT = "Randomly_Ganareted_32-DigitsSalt";
+    private static final SecurityCode SECURITY_CODE = new SecurityCode("email@example.com", "code");
+
+    private static final EncryptionService ENCRYPTION_SERVICE = new EncryptionService(CIPHER, SALT);
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    private final SecureEnvelopeRedisSerializer<SecurityCode> sut =
+            new SecureEnvelopeRedisSerializer<SecurityCode>(SecurityCode.class, ENCRYPTION_SERVICE);
+
+    @Test
+    public void testSerialization_binaryEnvelopeSmallerThanSecureJson() {
+        byte[] legacy = new SecureJacksonJsonRedisSerializer<SecurityCode>(SecurityCode.class, ENCRYPTION_SERVICE)
+                .serialize(SECURITY_CODE);
+
+        byte[] envelope = sut.serialize(SECURITY_CODE);
+
+        Assert.assertEquals(SecureEnvelope.FORMAT_AES_GCM, envelope[0]);
+        Assert.assertTrue(envelope.length < legacy.length);
+    }
+
+    @Test
+    public void testDeserialization_envelope_allOK() {
+        SecurityCode code = sut.deserialize(sut.serialize(SECURITY_CODE));
+
+        Assert.assertEquals("email@example.com", code.getEmail());
+        Assert.assertEquals("code", code.getCode());
+    }
+
+    @Test
+    public void testDeserialization_legacySecureJson_allOK() {
+        byte[] legacy = new SecureJacksonJsonRedisSerializer<SecurityCode>(SecurityCode.class, ENCRYPTION_SERVICE)
+                .serialize(SECURITY_CODE);
+
+        SecurityCode code = sut.deserialize(legacy);
+
+        Assert.assertEquals("email@example.com", code.getEmail());
+        Assert.assertEquals("code", code.getCode());
+    }
+
+    @Test
+    public void testDeserialization_tamperedEnvelope_exceptionThrown() {
+        thrown.expect(SerializationException.class);
+        thrown.expectMessage("Could not decrypt secure envelope");
+        byte[] envelope = sut.serialize(SECURITY_CODE);
+        envelope[envelope.length - 1] ^= 1;
+
+        sut.deserialize(envelope);
+    }
+
+    @Test
+    public void testDeserialization_otherKey_exceptionThrown() {
+        thrown.expect(SerializationException.class);
+        thrown.expectMessage("Could not decrypt secure envelope");
+        SecureEnvelopeRedisSerializer<SecurityCode> otherKeySerializer = new SecureEnvelopeRedisSerializer<SecurityCode>(
+                SecurityCode.class, new EncryptionService(OTHER_CIPHER, SALT));
+
+        sut.deserialize(otherKeySerializer.serialize(SECURITY_CODE));
+    }
+
+    @Test
+    public void testDeserialization_truncatedEnvelope_exceptionThrown() {
+        thrown.expect(SerializationException.class);
+        thrown.expectMessage("Could not decrypt secure envelope");
+
+        sut.deserialize(new byte[]{SecureEnvelope.FORMAT_AES_GCM, 0, 0});
+    }
+}
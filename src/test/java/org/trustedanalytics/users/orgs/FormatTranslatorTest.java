@@ -0,0 +1,110 @@
+/**
+ *  Copyright (c) 2015 Intel Corporation 
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.trustedanalytics.users.orgs;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.trustedanalytics.cloud.cc.api.CcOrg;
+import org.trustedanalytics.cloud.cc.api.CcSpace;
+import org.trustedanalytics.user.orgs.FormatTranslator;
+import org.trustedanalytics.user.orgs.Organization;
+import org.trustedanalytics.user.orgs.Space;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+public class FormatTranslatorTest {
+
+    @Test
+    public void getOrganizationsWithSpaces_testResources_returnExpectedTree() {
+        Collection<Organization> result = FormatTranslator.getOrganizationsWithSpaces(
+            OrgsTestsResources.getOrgsReturnedByCfAdapter(), Collections.emptyList(),
+            OrgsTestsResources.getSpacesReturnedByCfAdapter());
+
+        assertEquals(new ArrayList<>(OrgsTestsResources.getOrgsWithSpacesExpectedToBeReturnedByScBeforeJsonization()),
+            new ArrayList<>(result));
+    }
+
+    @Test
+    public void getOrganizationsWithSpaces_randomTopology_sameAsPreviousImplementation() {
+        Random random = new Random(42);
+        for (int round = 0; round < 50; round++) {
+            List<CcOrg> orgs = new ArrayList<>();
+            for (int i = random.nextInt(30); i > 0; i--) {
+                orgs.add(new CcOrg(UUID.randomUUID(), "org" + i));
+            }
+            List<CcOrg> managedOrgs = new ArrayList<>();
+            // managed orgs may include ones which are not listed
+            orgs.stream().filter(org -> random.nextBoolean()).forEach(managedOrgs::add);
+            managedOrgs.add(new CcOrg(UUID.randomUUID(), "unlisted"));
+            List<CcSpace> spaces = new ArrayList<>();
+            for (int i = random.nextInt(100); i > 0; i--) {
+                // some spaces are orphans, some orgs are left without spaces
+                UUID orgGuid = orgs.isEmpty() || random.nextInt(10) == 0
+                    ? UUID.randomUUID()
+                    : orgs.get(random.nextInt(Math.max(1, orgs.size() / 2))).getGuid();
+                spaces.add(new CcSpace(UUID.randomUUID(), "space" + i, orgGuid));
+            }
+            Collections.shuffle(orgs, random);
+
+            List<Organization> expected = new ArrayList<>(previousImplementation(orgs, managedOrgs, spaces));
+            List<Organization> result =
+                new ArrayList<>(FormatTranslator.getOrganizationsWithSpaces(orgs, managedOrgs, spaces));
+
+            assertEquals(expected, result);
+            assertEquals(managerFlags(expected), managerFlags(result));
+        }
+    }
+
+    private static List<Boolean> managerFlags(List<Organization> orgs) {
+        return orgs.stream().map(Organization::getManager).collect(Collectors.toList());
+    }
+
+    /**
+     * Tree building as it was before it was made single pass, kept as a reference.
+     */
+    private static Collection<Organization> previousImplementation(Collection<CcOrg> orgs, Collection<CcOrg> mngOrgs,
+                                                                   Collection<CcSpace> spacesList) {
+        Map<UUID, Organization> outputOrgs = new TreeMap<>();
+        for (CcOrg cfOrg : orgs) {
+            outputOrgs.put(cfOrg.getGuid(), new Organization(cfOrg));
+        }
+
+        mngOrgs.forEach(mngorg -> {
+            if (outputOrgs.containsKey(mngorg.getGuid())) {
+                outputOrgs.get(mngorg.getGuid()).setManager(true);
+            }
+        });
+
+        for (CcSpace cfSpace : spacesList) {
+            Organization org = outputOrgs.get(cfSpace.getOrgGuid());
+            if (org != null) {
+                org.addSpace(new Space(cfSpace));
+            }
+        }
+
+        return new LinkedList<>(outputOrgs.values());
+    }
+}
@@ -17,7 +17,10 @@ package org.trustedanalytics.users.orgs;
 
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -27,6 +30,7 @@ import org.trustedanalytics.user.invite.config.AccessTokenDetails;
 import org.trustedanalytics.user.manageusers.OrgNameRequest;
 import org.trustedanalytics.user.orgs.Organization;
 import org.trustedanalytics.user.orgs.OrgsController;
+import org.trustedanalytics.user.orgs.TopologySnapshots;
 
 
 import org.junit.Before;
@@ -34,8 +38,13 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.boot.actuate.metrics.GaugeService;
 import org.springframework.security.core.Authentication;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.WebRequest;
 import rx.Observable;
 
 import java.util.Collection;
@@ -55,9 +64,15 @@ public class OrgsControllerTest {
     @Mock
     private UserDetailsFinder detailsFinder;
 
+    @Mock
+    private GaugeService gaugeService;
+
+    private TopologySnapshots topologySnapshots;
+
     @Before
     public void Setup() {
-        sut = new OrgsController(cfClient, detailsFinder);
+        topologySnapshots = new TopologySnapshots(100, 60, 300);
+        sut = new OrgsController(cfClient, detailsFinder, Runnable::run, gaugeService, topologySnapshots);
     }
 
     @Test
@@ -75,13 +90,66 @@ public class OrgsControllerTest {
         when(userAuthentication.getDetails()).thenReturn(details);
         OAuth2Authentication auth = new OAuth2Authentication(null, userAuthentication);
 
-        Collection<Organization> orgs = sut.getOrgs(auth);
+        Collection<Organization> orgs = sut.getOrgs(auth, mock(WebRequest.class));
         assertEquals(expectedOrgs, orgs);
 
         verify(cfClient).getSpaces();
         verify(cfClient).getOrgs();
     }
 
+    @Test
+    public void getOrgs_snapshotNotModified_notModifiedWithoutAskingCf() {
+        when(cfClient.getSpaces()).thenReturn(Observable.from(OrgsTestsResources.getSpacesReturnedByCfAdapter()));
+        when(cfClient.getOrgs()).thenReturn(Observable.from(OrgsTestsResources.getOrgsReturnedByCfAdapter()));
+        OAuth2Authentication auth = new OAuth2Authentication(null, userAuthentication);
+
+        MockHttpServletResponse firstResponse = new MockHttpServletResponse();
+        sut.getOrgs(auth, new ServletWebRequest(new MockHttpServletRequest("GET", "/rest/orgs"), firstResponse));
+        String etag = firstResponse.getHeader("ETag");
+
+        MockHttpServletRequest secondRequest = new MockHttpServletRequest("GET", "/rest/orgs");
+        secondRequest.addHeader("If-None-Match", etag);
+        MockHttpServletResponse secondResponse = new MockHttpServletResponse();
+        Collection<Organization> orgs = sut.getOrgs(auth, new ServletWebRequest(secondRequest, secondResponse));
+
+        assertNull(orgs);
+        assertEquals(304, secondResponse.getStatus());
+        verify(cfClient, times(1)).getOrgs();
+        verify(cfClient, times(1)).getSpaces();
+    }
+
+    @Test
+    public void getOrgs_orgCreated_snapshotReloaded() {
+        when(cfClient.getSpaces()).thenReturn(Observable.from(OrgsTestsResources.getSpacesReturnedByCfAdapter()));
+        when(cfClient.getOrgs()).thenReturn(Observable.from(OrgsTestsResources.getOrgsReturnedByCfAdapter()));
+        OAuth2Authentication auth = new OAuth2Authentication(null, userAuthentication);
+        OrgNameRequest orgNameRequest = new OrgNameRequest();
+        orgNameRequest.setName("test-org-name");
+
+        sut.getOrgs(auth, mock(WebRequest.class));
+        sut.createOrg(orgNameRequest);
+        sut.getOrgs(auth, mock(WebRequest.class));
+
+        verify(cfClient, times(2)).getOrgs();
+    }
+
+    @Test
+    public void getOrgs_rolesOfUserChanged_snapshotReloaded() {
+        UUID userId = UUID.randomUUID();
+        when(cfClient.getSpaces()).thenReturn(Observable.from(OrgsTestsResources.getSpacesReturnedByCfAdapter()));
+        when(cfClient.getOrgs()).thenReturn(Observable.from(OrgsTestsResources.getOrgsReturnedByCfAdapter()));
+        OAuth2Authentication auth = new OAuth2Authentication(null, userAuthentication);
+        when(detailsFinder.findUserId(auth)).thenReturn(userId);
+
+        sut.getOrgs(auth, mock(WebRequest.class));
+        topologySnapshots.orgRolesChanged(UUID.randomUUID(), UUID.randomUUID());
+        sut.getOrgs(auth, mock(WebRequest.class));
+        topologySnapshots.orgRolesChanged(userId, UUID.randomUUID());
+        sut.getOrgs(auth, mock(WebRequest.class));
+
+        verify(cfClient, times(2)).getOrgs();
+    }
+
     @Test
     public void renameOrg_positive() {
         UUID orgId = UUID.randomUUID();
@@ -31,7 +31,10 @@ import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
 import org.trustedanalytics.cloud.cc.api.CcSpace;
+import org.trustedanalytics.user.current.UserDetailsFinder;
 import org.trustedanalytics.user.orgs.SpacesController;
+import org.trustedanalytics.user.orgs.TopologySnapshots;
+import org.springframework.web.context.request.WebRequest;
 import rx.Observable;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -41,9 +44,11 @@ public class SpacesControllerTest {
 
     @Mock private CcOperationsOrgsSpaces cfClient;
 
+    @Mock private UserDetailsFinder detailsFinder;
+
     @Before
     public void setUp() {
-        sut = new SpacesController(cfClient);
+        sut = new SpacesController(cfClient, detailsFinder, new TopologySnapshots(100, 60, 300));
     }
 
     @Test
@@ -53,7 +58,7 @@ public class SpacesControllerTest {
 
         when(cfClient.getSpaces()).thenReturn(spacesReturnedByCfAdapter);
 
-        Collection<CcSpace> spaces = sut.getSpaces();
+        Collection<CcSpace> spaces = sut.getSpaces(null, mock(WebRequest.class));
         assertEquals(spacesReturnedByCfAdapter.toList().toBlocking().single(), spaces);
 
         verify(cfClient).getSpaces();
@@ -67,9 +72,21 @@ public class SpacesControllerTest {
 
         when(cfClient.getSpaces(any(UUID.class))).thenReturn(Observable.from(expectedSpaces));
 
-        Collection<CcSpace> spaces = sut.getSpaces(org);
+        Collection<CcSpace> spaces = sut.getSpaces(org, null, mock(WebRequest.class));
         assertEquals(expectedSpaces, spaces);
 
         verify(cfClient).getSpaces(UUID.fromString(org));
     }
+
+    @Test
+    public void getSpaces_spaceDeleted_snapshotReloaded() {
+        when(cfClient.getSpaces()).thenReturn(Observable.from(OrgsTestsResources.getSpacesReturnedByCfAdapter()));
+
+        sut.getSpaces(null, mock(WebRequest.class));
+        sut.getSpaces(null, mock(WebRequest.class));
+        sut.deleteSpace(UUID.randomUUID().toString());
+        sut.getSpaces(null, mock(WebRequest.class));
+
+        verify(cfClient, times(2)).getSpaces();
+    }
 }
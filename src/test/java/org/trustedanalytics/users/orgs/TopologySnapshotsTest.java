@@ -0,0 +1,145 @@
+/**
+ *  Copyright (c) 2015 Intel Corporation 
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.trustedanalytics.users.orgs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.base.Ticker;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.trustedanalytics.user.orgs.TopologySnapshots;
+import org.trustedanalytics.user.orgs.TopologySnapshots.SnapshotKey;
+
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TopologySnapshotsTest {
+
+    private static final long TTL_SECONDS = 60;
+    private static final long MAX_STALE_SECONDS = 300;
+
+    private FakeTicker ticker;
+    private TopologySnapshots sut;
+    private SnapshotKey key;
+
+    @Before
+    public void setUp() {
+        ticker = new FakeTicker();
+        sut = new TopologySnapshots(100, TTL_SECONDS, MAX_STALE_SECONDS, ticker);
+        key = TopologySnapshots.key("orgs", UUID.randomUUID());
+    }
+
+    @After
+    public void tearDown() {
+        sut.destroy();
+    }
+
+    @Test
+    public void get_staleHitsDuringRefresh_refreshedOnce() throws InterruptedException {
+        sut.get(key, () -> "loaded");
+        ticker.advance(TTL_SECONDS + 1, TimeUnit.SECONDS);
+        CountDownLatch refreshStarted = new CountDownLatch(1);
+        CountDownLatch refreshReleased = new CountDownLatch(1);
+        AtomicInteger refreshes = new AtomicInteger();
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals("loaded", sut.get(key, () -> {
+                refreshes.incrementAndGet();
+                refreshStarted.countDown();
+                await(refreshReleased);
+                return "refreshed";
+            }).getValue());
+        }
+        assertTrue(refreshStarted.await(1, TimeUnit.SECONDS));
+        refreshReleased.countDown();
+
+        awaitValue("refreshed");
+        assertEquals(1, refreshes.get());
+    }
+
+    @Test
+    public void get_invalidatedAllDuringRefresh_refreshedSnapshotDropped() throws InterruptedException {
+        sut.get(key, () -> "loaded");
+        ticker.advance(TTL_SECONDS + 1, TimeUnit.SECONDS);
+        CountDownLatch refreshStarted = new CountDownLatch(1);
+        CountDownLatch refreshReleased = new CountDownLatch(1);
+        CountDownLatch refreshDone = new CountDownLatch(1);
+
+        sut.get(key, () -> {
+            refreshStarted.countDown();
+            await(refreshReleased);
+            refreshDone.countDown();
+            return "refreshed";
+        });
+        assertTrue(refreshStarted.await(1, TimeUnit.SECONDS));
+        sut.invalidateAll();
+        refreshReleased.countDown();
+        assertTrue(refreshDone.await(1, TimeUnit.SECONDS));
+        // snapshot would be stored right after the loader returns
+        Thread.sleep(100);
+
+        assertEquals("reloaded", sut.get(key, () -> "reloaded").getValue());
+    }
+
+    @Test
+    public void get_olderThanMaxStale_loadedAgain() {
+        sut.get(key, () -> "loaded");
+        ticker.advance(MAX_STALE_SECONDS + 1, TimeUnit.SECONDS);
+
+        assertEquals("reloaded", sut.get(key, () -> "reloaded").getValue());
+    }
+
+    private void awaitValue(String expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 1000;
+        String value = null;
+        while (System.currentTimeMillis() < deadline) {
+            value = sut.<String>get(key, () -> "missed").getValue();
+            if (expected.equals(value)) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+        assertEquals(expected, value);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class FakeTicker extends Ticker {
+        private final AtomicLong nanos = new AtomicLong();
+
+        @Override
+        public long read() {
+            return nanos.get();
+        }
+
+        void advance(long duration, TimeUnit unit) {
+            nanos.addAndGet(unit.toNanos(duration));
+        }
+    }
+}